@@ -0,0 +1,119 @@
+package it.polito.cloudresources.eventprocessor.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import it.polito.cloudresources.eventprocessor.model.Event;
+import it.polito.cloudresources.eventprocessor.model.Resource;
+import it.polito.cloudresources.eventprocessor.model.ResourceType;
+import it.polito.cloudresources.eventprocessor.model.WebhookConfig;
+import it.polito.cloudresources.eventprocessor.model.WebhookEventType;
+import it.polito.cloudresources.eventprocessor.repository.WebhookConfigRepository;
+import it.polito.cloudresources.eventprocessor.util.DateTimeUtils;
+import org.keycloak.representations.idm.UserRepresentation;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.lang.reflect.Proxy;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sample data and stubbed collaborators shared by the benchmarks.
+ */
+final class BenchmarkFixtures {
+
+    static final String USER_ID = "6f1c2a4e-9d1b-4c33-8a57-3b0f2e7d9a10";
+    static final String SITE_ID = "b2d9e0c4-1f7a-4e2b-9c68-5a3e8d0f1b27";
+
+    private BenchmarkFixtures() {
+    }
+
+    // Same defaults as the ObjectMapper auto-configured by Spring Boot (JavaTimeModule, ISO dates)
+    static ObjectMapper objectMapper() {
+        return Jackson2ObjectMapperBuilder.json().build();
+    }
+
+    static Event event(long id, Resource resource) {
+        Event event = new Event();
+        event.setId(id);
+        event.setTitle("GPU training run " + id);
+        event.setDescription("Fine-tuning job booked through the reservation portal");
+        event.setStart(ZonedDateTime.now(DateTimeUtils.DEFAULT_ZONE_ID).plusMinutes(5));
+        event.setEnd(event.getStart().plusHours(4));
+        event.setResource(resource);
+        event.setKeycloakId(USER_ID);
+        event.setCustomParameters("{\"image\":\"pytorch:2.3\",\"gpus\":2}");
+        return event;
+    }
+
+    static Resource resource(long id, long typeId) {
+        ResourceType type = new ResourceType();
+        type.setId(typeId);
+        type.setName("GPU node");
+        Resource resource = new Resource();
+        resource.setId(id);
+        resource.setName("gpu-node-" + id);
+        resource.setSpecs("2x A100 80GB, 512GB RAM");
+        resource.setLocation("Datacenter A, rack 12");
+        resource.setSiteId(SITE_ID);
+        resource.setType(type);
+        return resource;
+    }
+
+    static WebhookConfig webhook(long id, WebhookEventType eventType, Long resourceId, Long resourceTypeId) {
+        WebhookConfig webhook = new WebhookConfig();
+        webhook.setId(id);
+        webhook.setName("webhook-" + id);
+        webhook.setUrl("https://provisioner.example.org/hooks/" + id);
+        webhook.setEventType(eventType);
+        webhook.setSecret("s3cr3t-" + id + "-0123456789abcdef0123456789abcdef");
+        webhook.setResourceId(resourceId);
+        webhook.setResourceTypeId(resourceTypeId);
+        return webhook;
+    }
+
+    /**
+     * Webhooks spread over resources, resource types and the global scope, as in a mid-sized installation.
+     */
+    static List<WebhookConfig> webhooks(int count, int resources, int resourceTypes) {
+        List<WebhookConfig> webhooks = new ArrayList<>(count);
+        WebhookEventType[] types = {WebhookEventType.EVENT_START, WebhookEventType.EVENT_END, WebhookEventType.ALL};
+        for (int i = 0; i < count; i++) {
+            WebhookEventType eventType = types[i % types.length];
+            switch (i % 4) {
+                case 0 -> webhooks.add(webhook(i, eventType, (long) (i % resources), null));
+                case 1 -> webhooks.add(webhook(i, eventType, null, (long) (i % resourceTypes)));
+                case 2 -> webhooks.add(webhook(i, eventType, (long) (i % resources), (long) (i % resourceTypes)));
+                default -> webhooks.add(webhook(i, eventType, null, null));
+            }
+        }
+        return webhooks;
+    }
+
+    // Repository stub serving a fixed list of webhooks, the only method the routing index calls
+    static WebhookConfigRepository webhookConfigRepository(List<WebhookConfig> webhooks) {
+        return (WebhookConfigRepository) Proxy.newProxyInstance(
+                WebhookConfigRepository.class.getClassLoader(),
+                new Class<?>[]{WebhookConfigRepository.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("findByEnabledTrue")) {
+                        return webhooks;
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    // Lookups are stubbed by prefetching the enrichment data into the snapshot, as the dispatcher does
+    static EnrichmentSnapshot snapshot(Event event) {
+        UserRepresentation user = new UserRepresentation();
+        user.setId(USER_ID);
+        user.setUsername("jdoe");
+        user.setEmail("jdoe@example.org");
+        return new EnrichmentSnapshot(
+                Map.of(event.getId(), event),
+                Map.of(),
+                Map.of(USER_ID, user),
+                Map.of(USER_ID, "ssh-ed25519 AAAAC3NzaC1lZDI1NTE5AAAAIH6x5Yg8XvXj0nWm0ZtC9kQ4Ez2r3bG9d7lXcPZJ2wQv jdoe@laptop"),
+                Map.of(SITE_ID, "Turin campus"));
+    }
+}
@@ -0,0 +1,87 @@
+package it.polito.cloudresources.eventprocessor.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import it.polito.cloudresources.eventprocessor.model.Event;
+import it.polito.cloudresources.eventprocessor.model.WebhookConfig;
+import it.polito.cloudresources.eventprocessor.model.WebhookEventType;
+import it.polito.cloudresources.eventprocessor.model.dto.EventWebhookPayload;
+import it.polito.cloudresources.eventprocessor.util.DateTimeUtils;
+import it.polito.cloudresources.eventprocessor.util.WebhookSigner;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.HttpHeaders;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-delivery hot path of the notifier: payload assembly, JSON serialization and HMAC signing.
+ * Run with the gc profiler (the default of the benchmarks profile) to get the allocation rate per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WebhookNotifierBenchmark {
+
+    private ObjectMapper objectMapper;
+    private WebhookNotifierService notifier;
+    private WebhookConfig webhook;
+    private Event event;
+    private EnrichmentSnapshot snapshot;
+    private EventWebhookPayload payload;
+    private byte[] body;
+
+    @Setup
+    public void setUp() throws Exception {
+        objectMapper = BenchmarkFixtures.objectMapper();
+        // Only the collaborators used by payload assembly and signing are provided
+        notifier = new WebhookNotifierService(null, null, null, objectMapper, new DateTimeUtils(), null, null,
+                new SimpleMeterRegistry(), new WebhookSigner(), null);
+        webhook = BenchmarkFixtures.webhook(1, WebhookEventType.ALL, null, null);
+        event = BenchmarkFixtures.event(42, BenchmarkFixtures.resource(7, 3));
+        snapshot = BenchmarkFixtures.snapshot(event);
+        payload = notifier.createPayload(WebhookEventType.EVENT_START, event, webhook.getId(), snapshot);
+        body = objectMapper.writeValueAsBytes(payload);
+    }
+
+    @Benchmark
+    public String serializePayload() throws Exception {
+        return objectMapper.writeValueAsString(payload);
+    }
+
+    @Benchmark
+    public HttpHeaders signPayload() {
+        return notifier.createHeaders(webhook, body);
+    }
+
+    @Benchmark
+    public EventWebhookPayload createPayload() {
+        return notifier.createPayload(WebhookEventType.EVENT_START, event, webhook.getId(), snapshot);
+    }
+
+    // Everything the first delivery of an event does before the HTTP call
+    @Benchmark
+    public HttpHeaders createSerializeAndSign() {
+        EnrichmentSnapshot fresh = BenchmarkFixtures.snapshot(event);
+        byte[] built = notifier.encodeSharedPayload(WebhookEventType.EVENT_START, event, fresh).withField(webhook.getId());
+        return notifier.createHeaders(webhook, built);
+    }
+
+    // Every further webhook notified about the same event reuses the serialized payload
+    @Benchmark
+    public HttpHeaders spliceAndSign() {
+        byte[] built = notifier.encodeSharedPayload(WebhookEventType.EVENT_START, event, snapshot).withField(webhook.getId());
+        return notifier.createHeaders(webhook, built);
+    }
+}
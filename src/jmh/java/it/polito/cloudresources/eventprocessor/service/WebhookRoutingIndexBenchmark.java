@@ -0,0 +1,50 @@
+package it.polito.cloudresources.eventprocessor.service;
+
+import it.polito.cloudresources.eventprocessor.model.Resource;
+import it.polito.cloudresources.eventprocessor.model.WebhookConfig;
+import it.polito.cloudresources.eventprocessor.model.WebhookEventType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resolution of the webhooks subscribed to an event against the in-memory routing index.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WebhookRoutingIndexBenchmark {
+
+    @Param({"10", "1000"})
+    private int webhookCount;
+
+    private WebhookRoutingIndex routingIndex;
+    private Resource resource;
+
+    @Setup
+    public void setUp() {
+        List<WebhookConfig> webhooks = BenchmarkFixtures.webhooks(webhookCount, 100, 10);
+        routingIndex = new WebhookRoutingIndex(BenchmarkFixtures.webhookConfigRepository(webhooks));
+        routingIndex.refresh();
+        resource = BenchmarkFixtures.resource(4, 4);
+    }
+
+    @Benchmark
+    public List<WebhookConfig> findRelevantWebhooks() {
+        return routingIndex.findRelevantWebhooks(resource, WebhookEventType.EVENT_START);
+    }
+}
@@ -0,0 +1,54 @@
+package it.polito.cloudresources.eventprocessor.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time zone normalization and ISO formatting, called several times per payload.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DateTimeUtilsBenchmark {
+
+    private DateTimeUtils dateTimeUtils;
+    private ZonedDateTime utcTime;
+    private ZonedDateTime localTime;
+
+    @Setup
+    public void setUp() {
+        dateTimeUtils = new DateTimeUtils();
+        utcTime = ZonedDateTime.now(DateTimeUtils.DEFAULT_ZONE_ID);
+        localTime = utcTime.withZoneSameInstant(ZoneId.of("Europe/Rome"));
+    }
+
+    @Benchmark
+    public ZonedDateTime ensureTimeZoneUtc() {
+        return dateTimeUtils.ensureTimeZone(utcTime);
+    }
+
+    @Benchmark
+    public ZonedDateTime ensureTimeZoneOtherZone() {
+        return dateTimeUtils.ensureTimeZone(localTime);
+    }
+
+    @Benchmark
+    public String formatDateTime() {
+        return dateTimeUtils.formatDateTime(utcTime);
+    }
+}
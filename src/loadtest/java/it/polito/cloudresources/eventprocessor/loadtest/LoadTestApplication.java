@@ -0,0 +1,19 @@
+package it.polito.cloudresources.eventprocessor.loadtest;
+
+import it.polito.cloudresources.eventprocessor.ReservationEventProcessorApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+
+/**
+ * Entry point of the end-to-end load test: the real application context with the loadtest profile,
+ * which seeds a local database, stubs Keycloak and the SSH key lookups, receives the webhooks on
+ * in-process stub receivers and reports the sustained throughput (see LoadTestRunner).
+ * Run with: mvn -Ploadtest test-compile exec:exec [-Dloadtest.jvmArgs="-Xmx1g -Dloadtest.events=50000"]
+ */
+public class LoadTestApplication {
+
+    public static void main(String[] args) {
+        new SpringApplicationBuilder(ReservationEventProcessorApplication.class)
+                .profiles("loadtest")
+                .run(args);
+    }
+}
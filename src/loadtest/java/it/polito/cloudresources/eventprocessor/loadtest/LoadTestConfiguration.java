@@ -0,0 +1,86 @@
+package it.polito.cloudresources.eventprocessor.loadtest;
+
+import it.polito.cloudresources.eventprocessor.repository.SshKeyRepository;
+import it.polito.cloudresources.eventprocessor.service.KeycloakService;
+import it.polito.cloudresources.eventprocessor.service.SshKeyService;
+import org.keycloak.representations.idm.UserRepresentation;
+import org.springframework.boot.autoconfigure.flyway.FlywayMigrationStrategy;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Replaces the Keycloak and SSH key lookups with in-memory stubs, so a load test measures the processor
+ * and not the identity provider. The beans override the application's ones by name
+ * (spring.main.allow-bean-definition-overriding in application-loadtest.yml).
+ * Before migrating, the database is checked to be a load test one (see {@link LoadTestDatabaseGuard}).
+ */
+@Configuration
+@Profile("loadtest")
+@EnableConfigurationProperties(LoadTestProperties.class)
+public class LoadTestConfiguration {
+
+    @Bean
+    public FlywayMigrationStrategy loadTestMigrationStrategy() {
+        return flyway -> {
+            try {
+                LoadTestDatabaseGuard.claim(flyway.getConfiguration().getDataSource());
+            } catch (SQLException e) {
+                throw new IllegalStateException("Could not check the load test database: " + e.getMessage(), e);
+            }
+            flyway.migrate();
+        };
+    }
+
+    @Bean
+    public KeycloakService keycloakService() {
+        return new KeycloakService(null) {
+
+            @Override
+            public void refreshAccessToken() {
+            }
+
+            @Override
+            public Optional<UserRepresentation> getUserById(String userId) {
+                UserRepresentation user = new UserRepresentation();
+                user.setId(userId);
+                user.setUsername(userId);
+                user.setEmail(userId + "@loadtest.local");
+                return Optional.of(user);
+            }
+
+            @Override
+            public Optional<String> getGroupNameById(String groupId) {
+                return Optional.of("Site " + groupId);
+            }
+        };
+    }
+
+    @Bean
+    public SshKeyService sshKeyService(SshKeyRepository sshKeyRepository) {
+        return new SshKeyService(sshKeyRepository) {
+
+            @Override
+            public Optional<String> getUserSshKey(String userId) {
+                return Optional.of(sshKey(userId));
+            }
+
+            @Override
+            public Map<String, String> getUserSshKeys(Collection<String> userIds) {
+                return userIds.stream().distinct().collect(Collectors.toMap(Function.identity(), this::sshKey));
+            }
+
+            private String sshKey(String userId) {
+                return "ssh-ed25519 AAAAC3NzaC1lZDI1NTE5AAAAILoadTestKeyLoadTestKeyLoadTestKeyLoadTest " + userId;
+            }
+        };
+    }
+}
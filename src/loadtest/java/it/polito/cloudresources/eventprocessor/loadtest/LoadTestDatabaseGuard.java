@@ -0,0 +1,60 @@
+package it.polito.cloudresources.eventprocessor.loadtest;
+
+import lombok.extern.slf4j.Slf4j;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Keeps the load test away from real data: the harness deletes the tables' contents on every run, so it only
+ * runs against a database marked by the loadtest_harness table. The marker is created on the first run, and
+ * only if the database has no events table yet, i.e. it was not created by reservation-be or an earlier
+ * processor.
+ */
+@Slf4j
+final class LoadTestDatabaseGuard {
+
+    static final String MARKER_TABLE = "loadtest_harness";
+
+    private LoadTestDatabaseGuard() {
+    }
+
+    /**
+     * Mark an empty database as the harness's, or check that it already is. Must run before the migrations.
+     *
+     * @throws IllegalStateException if the database holds tables that were not created by the harness
+     */
+    static void claim(DataSource dataSource) throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            if (isHarnessDatabase(connection)) {
+                return;
+            }
+            if (tableExists(connection, "events")) {
+                throw new IllegalStateException("Database " + connection.getMetaData().getURL() + " has an events table but no "
+                        + MARKER_TABLE + " marker: refusing to run the load test, which deletes all events and webhooks. "
+                        + "Point it to a dedicated database (LOADTEST_DB_NAME, reservation_loadtest by default)");
+            }
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("CREATE TABLE " + MARKER_TABLE + " (created_at TIMESTAMP WITH TIME ZONE NOT NULL)");
+                statement.execute("INSERT INTO " + MARKER_TABLE + " (created_at) VALUES (CURRENT_TIMESTAMP)");
+            }
+            if (!connection.getAutoCommit()) {
+                connection.commit();
+            }
+            log.info("Marked {} as a load test database", connection.getMetaData().getURL());
+        }
+    }
+
+    static boolean isHarnessDatabase(Connection connection) throws SQLException {
+        return tableExists(connection, MARKER_TABLE);
+    }
+
+    private static boolean tableExists(Connection connection, String table) throws SQLException {
+        try (ResultSet tables = connection.getMetaData().getTables(connection.getCatalog(), connection.getSchema(), table, null)) {
+            return tables.next();
+        }
+    }
+}
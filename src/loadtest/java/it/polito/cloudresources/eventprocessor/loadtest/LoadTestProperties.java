@@ -0,0 +1,48 @@
+package it.polito.cloudresources.eventprocessor.loadtest;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Shape of a load test run.
+ */
+@Data
+@ConfigurationProperties(prefix = "loadtest")
+public class LoadTestProperties {
+
+    // Synthetic reservations, each producing a start and an end notification
+    private int events = 10000;
+
+    // Resources the reservations are spread over (also spreads them over the partitions)
+    private int resources = 100;
+
+    // Distinct users owning the reservations
+    private int users = 500;
+
+    // Stub receivers, each registered as a webhook subscribed to ALL events of all resources
+    private int receivers = 2;
+
+    // Response time of the stub receivers: fixed part plus a uniformly distributed jitter
+    private Duration receiverLatency = Duration.ofMillis(20);
+
+    private Duration receiverJitter = Duration.ofMillis(10);
+
+    // Share of requests the stub receivers answer with a 500, between 0 and 1
+    private double receiverErrorRate = 0;
+
+    // Starts are spread evenly over this window, beginning after the lead-in
+    private Duration spread = Duration.ofMinutes(2);
+
+    private Duration leadIn = Duration.ofSeconds(30);
+
+    // Length of each reservation, so its end follows its start by this much
+    private Duration eventLength = Duration.ofMinutes(1);
+
+    // The run is reported as incomplete if not all deliveries arrived within this time after the last end
+    private Duration drainTimeout = Duration.ofMinutes(5);
+
+    // JSON copy of the report
+    private String reportFile = "target/loadtest-report.json";
+}
@@ -0,0 +1,267 @@
+package it.polito.cloudresources.eventprocessor.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import it.polito.cloudresources.eventprocessor.model.ResourceStatus;
+import it.polito.cloudresources.eventprocessor.model.WebhookEventType;
+import it.polito.cloudresources.eventprocessor.service.WebhookRoutingIndex;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Drives a load test run once the context is up: seeds N reservations over M resources whose starts are
+ * spread over the configured window, registers the stub receivers as webhooks, waits until every start and
+ * end was delivered to every receiver, then reports the sustained delivery rate, the schedule lag
+ * (event.notify.lag), the delivery latency, the scan cost and the heap and GC figures of the run, and exits.
+ * The exit code is 0 only if all deliveries arrived within the drain timeout.
+ */
+@Component
+@Profile("loadtest")
+@RequiredArgsConstructor
+@Slf4j
+public class LoadTestRunner implements ApplicationRunner {
+
+    private static final int INSERT_BATCH_SIZE = 1000;
+    private static final String SITE_ID = "loadtest-site";
+
+    private final LoadTestProperties properties;
+    private final JdbcTemplate jdbcTemplate;
+    private final WebhookRoutingIndex webhookRoutingIndex;
+    private final MeterRegistry meterRegistry;
+    private final ObjectMapper objectMapper;
+    private final ConfigurableApplicationContext context;
+
+    @Override
+    public void run(ApplicationArguments args) throws Exception {
+        StubWebhookReceivers receivers = new StubWebhookReceivers(
+                properties.getReceiverLatency(), properties.getReceiverJitter(), properties.getReceiverErrorRate());
+        boolean complete;
+        try {
+            deletePreviousRun();
+            List<String> urls = receivers.start(properties.getReceivers());
+
+            Instant firstStart = Instant.now().plus(properties.getLeadIn());
+            seed(urls, firstStart);
+            webhookRoutingIndex.refresh();
+
+            long expected = 2L * properties.getEvents() * properties.getReceivers();
+            Instant deadline = firstStart.plus(properties.getSpread()).plus(properties.getEventLength())
+                    .plus(properties.getDrainTimeout());
+            JvmBaseline baseline = JvmBaseline.take(meterRegistry);
+            long startedAt = System.nanoTime();
+
+            complete = awaitDeliveries(receivers, expected, deadline);
+            report(receivers, expected, complete, baseline, System.nanoTime() - startedAt);
+        } finally {
+            receivers.stop();
+        }
+
+        boolean success = complete;
+        System.exit(SpringApplication.exit(context, () -> success ? 0 : 1));
+    }
+
+    private void deletePreviousRun() {
+        // Checked before the migrations already, again right before deleting
+        Boolean harnessDatabase = jdbcTemplate.execute(LoadTestDatabaseGuard::isHarnessDatabase);
+        if (!Boolean.TRUE.equals(harnessDatabase)) {
+            throw new IllegalStateException("Not a load test database (no " + LoadTestDatabaseGuard.MARKER_TABLE
+                    + " table), refusing to delete its data");
+        }
+        for (String table : List.of("webhook_deliveries", "events", "webhook_configs", "resources", "resource_types",
+                "partition_watermarks")) {
+            int deleted = jdbcTemplate.update("DELETE FROM " + table);
+            if (deleted > 0) {
+                log.info("Deleted {} rows of a previous run from {}", deleted, table);
+            }
+        }
+    }
+
+    private void seed(List<String> urls, Instant firstStart) {
+        OffsetDateTime now = OffsetDateTime.now(ZoneOffset.UTC);
+        jdbcTemplate.update("INSERT INTO resource_types (name, color, site_id, created_at, updated_at) VALUES (?, ?, ?, ?, ?)",
+                "Load test", "#000000", SITE_ID, now, now);
+        Long typeId = jdbcTemplate.queryForObject("SELECT MAX(id) FROM resource_types", Long.class);
+
+        List<Object[]> resources = new ArrayList<>();
+        for (int i = 0; i < properties.getResources(); i++) {
+            resources.add(new Object[]{"Resource " + i, "Load test resource", "Rack " + (i % 10),
+                    ResourceStatus.ACTIVE.name(), typeId, SITE_ID, now, now});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO resources (name, specs, location, status, type_id, site_id, created_at, updated_at) " +
+                "VALUES (?, ?, ?, ?, ?, ?, ?, ?)", resources);
+        List<Long> resourceIds = jdbcTemplate.queryForList("SELECT id FROM resources ORDER BY id", Long.class);
+
+        List<Object[]> webhooks = new ArrayList<>();
+        for (int i = 0; i < urls.size(); i++) {
+            webhooks.add(new Object[]{"Load test receiver " + i, urls.get(i), WebhookEventType.ALL.name(), "loadtest-secret-" + i, true});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO webhook_configs (name, url, event_type, secret, enabled) VALUES (?, ?, ?, ?, ?)", webhooks);
+
+        // Starts evenly spread over the window, so the load is sustained rather than a single burst
+        long spreadNanos = properties.getSpread().toNanos();
+        List<Object[]> batch = new ArrayList<>(INSERT_BATCH_SIZE);
+        for (int i = 0; i < properties.getEvents(); i++) {
+            OffsetDateTime start = firstStart.plusNanos(spreadNanos / properties.getEvents() * i).atOffset(ZoneOffset.UTC);
+            OffsetDateTime end = start.plus(properties.getEventLength());
+            batch.add(new Object[]{"Load test " + i, start, end, resourceIds.get(i % resourceIds.size()),
+                    "user-" + (i % properties.getUsers()), now, now});
+            if (batch.size() == INSERT_BATCH_SIZE || i == properties.getEvents() - 1) {
+                jdbcTemplate.batchUpdate("INSERT INTO events (title, start_time, end_time, resource_id, keycloak_id, created_at, updated_at) " +
+                        "VALUES (?, ?, ?, ?, ?, ?, ?)", batch);
+                batch.clear();
+            }
+        }
+        log.info("Seeded {} reservations over {} resources and {} users, starting from {} over {}",
+                properties.getEvents(), resourceIds.size(), properties.getUsers(), firstStart, properties.getSpread());
+    }
+
+    private boolean awaitDeliveries(StubWebhookReceivers receivers, long expected, Instant deadline) throws InterruptedException {
+        long lastLog = System.nanoTime();
+        while (receivers.succeeded() < expected) {
+            if (Instant.now().isAfter(deadline)) {
+                log.warn("Drain timeout reached with {} of {} deliveries received", receivers.succeeded(), expected);
+                return false;
+            }
+            if (System.nanoTime() - lastLog > TimeUnit.SECONDS.toNanos(10)) {
+                log.info("Progress: {} of {} deliveries received ({} requests including errors)",
+                        receivers.succeeded(), expected, receivers.received());
+                lastLog = System.nanoTime();
+            }
+            Thread.sleep(200);
+        }
+        return true;
+    }
+
+    private void report(StubWebhookReceivers receivers, long expected, boolean complete, JvmBaseline baseline, long elapsedNanos) throws Exception {
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("complete", complete);
+        report.put("events", properties.getEvents());
+        report.put("resources", properties.getResources());
+        report.put("receivers", properties.getReceivers());
+        report.put("receiverLatencyMs", properties.getReceiverLatency().toMillis());
+        report.put("receiverErrorRate", properties.getReceiverErrorRate());
+        report.put("expectedDeliveries", expected);
+        report.put("deliveries", receivers.succeeded());
+        report.put("requests", receivers.received());
+        report.put("sustainedDeliveriesPerSecond", round(receivers.sustainedRate()));
+        report.put("elapsedSeconds", round(elapsedNanos / 1e9));
+
+        Map<String, Object> lag = new LinkedHashMap<>();
+        for (Timer timer : meterRegistry.find("event.notify.lag").timers()) {
+            lag.put(timer.getId().getTag("type"), summary(timer.takeSnapshot()));
+        }
+        report.put("scheduleLagMs", lag);
+
+        Map<String, Object> latency = new LinkedHashMap<>();
+        for (Timer timer : meterRegistry.find("webhook.delivery.latency").timers()) {
+            latency.put(timer.getId().getTags().stream().map(Tag::getValue).collect(Collectors.joining("/")),
+                    summary(timer.takeSnapshot()));
+        }
+        report.put("deliveryLatencyMs", latency);
+
+        Timer scan = meterRegistry.find("event.scan.duration").timer();
+        if (scan != null) {
+            report.put("scans", Map.of(
+                    "count", scan.count(),
+                    "meanMs", round(scan.mean(TimeUnit.MILLISECONDS)),
+                    "maxMs", round(scan.max(TimeUnit.MILLISECONDS))));
+        }
+
+        report.put("jvm", baseline.delta(meterRegistry, receivers.succeeded()));
+
+        String text = objectMapper.copy().enable(SerializationFeature.INDENT_OUTPUT).writeValueAsString(report);
+        log.info("Load test report:\n{}", text);
+        File file = new File(properties.getReportFile());
+        if (file.getParentFile() != null) {
+            file.getParentFile().mkdirs();
+        }
+        objectMapper.writerWithDefaultPrettyPrinter().writeValue(file, report);
+        log.info("Report written to {}", file.getAbsolutePath());
+    }
+
+    private static Map<String, Object> summary(HistogramSnapshot snapshot) {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("count", snapshot.count());
+        for (ValueAtPercentile percentile : snapshot.percentileValues()) {
+            summary.put("p" + Math.round(percentile.percentile() * 100), round(percentile.value(TimeUnit.MILLISECONDS)));
+        }
+        summary.put("mean", round(snapshot.mean(TimeUnit.MILLISECONDS)));
+        summary.put("max", round(snapshot.max(TimeUnit.MILLISECONDS)));
+        return summary;
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 100) / 100d;
+    }
+
+    /**
+     * Heap and GC counters at the start of the measured part of the run
+     */
+    private record JvmBaseline(double allocatedBytes, long gcCount, long gcMillis) {
+
+        static JvmBaseline take(MeterRegistry meterRegistry) {
+            ManagementFactory.getMemoryPoolMXBeans().forEach(MemoryPoolMXBean::resetPeakUsage);
+            long count = 0;
+            long millis = 0;
+            for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+                count += Math.max(0, gc.getCollectionCount());
+                millis += Math.max(0, gc.getCollectionTime());
+            }
+            return new JvmBaseline(allocated(meterRegistry), count, millis);
+        }
+
+        Map<String, Object> delta(MeterRegistry meterRegistry, long deliveries) {
+            // Read before take(), which resets the peaks
+            long peakHeap = ManagementFactory.getMemoryPoolMXBeans().stream()
+                    .filter(pool -> pool.getType() == MemoryType.HEAP)
+                    .mapToLong(pool -> pool.getPeakUsage().getUsed())
+                    .sum();
+            JvmBaseline end = take(meterRegistry);
+            double allocated = end.allocatedBytes - allocatedBytes;
+
+            Map<String, Object> jvm = new LinkedHashMap<>();
+            jvm.put("heapUsedMb", round(ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed() / 1048576d));
+            jvm.put("heapPeakMb", round(peakHeap / 1048576d));
+            jvm.put("heapMaxMb", round(ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getMax() / 1048576d));
+            jvm.put("allocatedMb", round(allocated / 1048576d));
+            jvm.put("allocatedBytesPerDelivery", deliveries == 0 ? 0 : Math.round(allocated / deliveries));
+            jvm.put("gcCount", end.gcCount - gcCount);
+            jvm.put("gcPauseMs", end.gcMillis - gcMillis);
+            return jvm;
+        }
+
+        // Bytes allocated in the young generation since startup, from the JVM GC metrics of Spring Boot
+        private static double allocated(MeterRegistry meterRegistry) {
+            Counter counter = meterRegistry.find("jvm.gc.memory.allocated").counter();
+            return counter != null ? counter.count() : 0;
+        }
+    }
+}
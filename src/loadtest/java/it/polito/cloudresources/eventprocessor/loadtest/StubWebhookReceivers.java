@@ -0,0 +1,114 @@
+package it.polito.cloudresources.eventprocessor.loadtest;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process webhook receivers on loopback ports, one JDK HttpServer each, handling every request on its own
+ * virtual thread. They answer after a configurable latency, fail a configurable share of requests with a 500,
+ * and count what they receive.
+ */
+@Slf4j
+public class StubWebhookReceivers {
+
+    private final Duration latency;
+    private final Duration jitter;
+    private final double errorRate;
+
+    private final List<HttpServer> servers = new ArrayList<>();
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong succeeded = new AtomicLong();
+    private final AtomicLong firstSuccessNanos = new AtomicLong();
+    private final AtomicLong lastSuccessNanos = new AtomicLong();
+
+    public StubWebhookReceivers(Duration latency, Duration jitter, double errorRate) {
+        this.latency = latency;
+        this.jitter = jitter;
+        this.errorRate = errorRate;
+    }
+
+    /**
+     * Start the given number of receivers
+     *
+     * @return Their webhook URLs
+     */
+    public List<String> start(int count) throws IOException {
+        List<String> urls = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+            server.createContext("/webhook", this::handle);
+            server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+            server.start();
+            servers.add(server);
+            urls.add("http://127.0.0.1:" + server.getAddress().getPort() + "/webhook");
+        }
+        log.info("Started {} stub webhook receivers: {}", count, urls);
+        return urls;
+    }
+
+    public void stop() {
+        servers.forEach(server -> server.stop(0));
+    }
+
+    /**
+     * Requests received, including those answered with an error
+     */
+    public long received() {
+        return received.get();
+    }
+
+    /**
+     * Requests answered with a 2xx
+     */
+    public long succeeded() {
+        return succeeded.get();
+    }
+
+    /**
+     * Successful deliveries per second between the first and the last one
+     */
+    public double sustainedRate() {
+        long count = succeeded.get();
+        long elapsedNanos = lastSuccessNanos.get() - firstSuccessNanos.get();
+        return count < 2 || elapsedNanos <= 0 ? 0 : (count - 1) * 1_000_000_000d / elapsedNanos;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange; InputStream body = exchange.getRequestBody()) {
+            body.transferTo(OutputStream.nullOutputStream());
+            received.incrementAndGet();
+
+            long delayMillis = latency.toMillis()
+                    + (jitter.isZero() ? 0 : ThreadLocalRandom.current().nextLong(jitter.toMillis() + 1));
+            if (delayMillis > 0) {
+                Thread.sleep(delayMillis);
+            }
+
+            if (ThreadLocalRandom.current().nextDouble() < errorRate) {
+                exchange.sendResponseHeaders(500, -1);
+                return;
+            }
+            exchange.sendResponseHeaders(204, -1);
+            long now = System.nanoTime();
+            if (succeeded.incrementAndGet() == 1) {
+                firstSuccessNanos.set(now);
+            }
+            lastSuccessNanos.accumulateAndGet(now, Math::max);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
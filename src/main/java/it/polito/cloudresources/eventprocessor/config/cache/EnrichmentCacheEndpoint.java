@@ -0,0 +1,41 @@
+package it.polito.cloudresources.eventprocessor.config.cache;
+
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import it.polito.cloudresources.eventprocessor.service.EnrichmentCacheService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Actuator endpoint exposing hit/miss statistics of the enrichment caches at /actuator/enrichmentcaches.
+ */
+@Component
+@Endpoint(id = "enrichmentcaches")
+@RequiredArgsConstructor
+public class EnrichmentCacheEndpoint {
+
+    private final EnrichmentCacheService enrichmentCacheService;
+
+    @ReadOperation
+    public Map<String, Map<String, Object>> stats() {
+        Map<String, Map<String, Object>> result = new LinkedHashMap<>();
+        enrichmentCacheService.stats().forEach((name, stats) -> result.put(name, toMap(stats)));
+        return result;
+    }
+
+    private Map<String, Object> toMap(CacheStats stats) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("hits", stats.hitCount());
+        map.put("misses", stats.missCount());
+        map.put("hitRate", stats.hitRate());
+        map.put("loads", stats.loadCount());
+        map.put("loadFailures", stats.loadFailureCount());
+        map.put("averageLoadPenaltyMillis", stats.averageLoadPenalty() / 1_000_000.0);
+        map.put("evictions", stats.evictionCount());
+        return map;
+    }
+}
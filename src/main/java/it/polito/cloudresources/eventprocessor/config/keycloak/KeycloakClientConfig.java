@@ -0,0 +1,67 @@
+package it.polito.cloudresources.eventprocessor.config.keycloak;
+
+import org.jboss.resteasy.client.jaxrs.ResteasyClient;
+import org.jboss.resteasy.client.jaxrs.ResteasyClientBuilder;
+import org.keycloak.OAuth2Constants;
+import org.keycloak.admin.client.Keycloak;
+import org.keycloak.admin.client.KeycloakBuilder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.ws.rs.client.ClientBuilder;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Long-lived Keycloak admin client shared by all lookups.
+ * The client keeps a pooled HTTP connection manager and its TokenManager caches the
+ * service-account token, refreshing it once it gets within min-token-validity of expiry.
+ */
+@Configuration
+public class KeycloakClientConfig {
+
+    @Value("${keycloak.auth-server-url}")
+    private String authServerUrl;
+
+    @Value("${keycloak.realm}")
+    private String realm;
+
+    @Value("${keycloak.resource}")
+    private String clientId;
+
+    @Value("${keycloak.credentials.secret}")
+    private String clientSecret;
+
+    @Value("${keycloak.client.connection-pool-size:20}")
+    private int connectionPoolSize;
+
+    @Value("${keycloak.client.connect-timeout-seconds:5}")
+    private long connectTimeoutSeconds;
+
+    @Value("${keycloak.client.read-timeout-seconds:10}")
+    private long readTimeoutSeconds;
+
+    @Value("${keycloak.client.min-token-validity-seconds:60}")
+    private long minTokenValiditySeconds;
+
+    @Bean(destroyMethod = "close")
+    public Keycloak keycloakAdminClient() {
+        ResteasyClientBuilder clientBuilder = (ResteasyClientBuilder) ClientBuilder.newBuilder();
+        clientBuilder.connectionPoolSize(connectionPoolSize);
+        clientBuilder.maxPooledPerRoute(connectionPoolSize);
+        clientBuilder.connectTimeout(connectTimeoutSeconds, TimeUnit.SECONDS);
+        clientBuilder.readTimeout(readTimeoutSeconds, TimeUnit.SECONDS);
+        ResteasyClient resteasyClient = (ResteasyClient) clientBuilder.build();
+
+        Keycloak keycloak = KeycloakBuilder.builder()
+                .serverUrl(authServerUrl)
+                .realm(realm)
+                .clientId(clientId)
+                .clientSecret(clientSecret)
+                .grantType(OAuth2Constants.CLIENT_CREDENTIALS)
+                .resteasyClient(resteasyClient)
+                .build();
+        keycloak.tokenManager().setMinTokenValidity(minTokenValiditySeconds);
+        return keycloak;
+    }
+}
@@ -0,0 +1,96 @@
+package it.polito.cloudresources.eventprocessor.config.webhook;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Caps the number of concurrent requests (and therefore pooled connections) per destination host.
+ * A slot is held until the response is closed, since the connection stays busy while its body is read.
+ */
+public class PerHostConnectionLimiter implements ClientHttpRequestInterceptor {
+
+    private final WebhookHttpProperties properties;
+    private final Map<String, Semaphore> slotsByHost = new ConcurrentHashMap<>();
+
+    public PerHostConnectionLimiter(WebhookHttpProperties properties) {
+        this.properties = properties;
+    }
+
+    @Override
+    public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution) throws IOException {
+        String host = request.getURI().getHost();
+        Semaphore slots = slotsByHost.computeIfAbsent(host, h ->
+                new Semaphore(properties.getHostMaxConnections().getOrDefault(h, properties.getMaxConnectionsPerHost())));
+
+        try {
+            if (!slots.tryAcquire(properties.getAcquireTimeout().toMillis(), TimeUnit.MILLISECONDS)) {
+                throw new IOException("Timed out waiting for a free connection to " + host);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for a free connection to " + host, e);
+        }
+
+        try {
+            return new SlotReleasingResponse(execution.execute(request, body), slots);
+        } catch (IOException | RuntimeException e) {
+            slots.release();
+            throw e;
+        }
+    }
+
+    private static final class SlotReleasingResponse implements ClientHttpResponse {
+
+        private final ClientHttpResponse delegate;
+        private final Semaphore slots;
+        private final AtomicBoolean released = new AtomicBoolean(false);
+
+        private SlotReleasingResponse(ClientHttpResponse delegate, Semaphore slots) {
+            this.delegate = delegate;
+            this.slots = slots;
+        }
+
+        @Override
+        public HttpStatusCode getStatusCode() throws IOException {
+            return delegate.getStatusCode();
+        }
+
+        @Override
+        public String getStatusText() throws IOException {
+            return delegate.getStatusText();
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return delegate.getHeaders();
+        }
+
+        @Override
+        public InputStream getBody() throws IOException {
+            return delegate.getBody();
+        }
+
+        @Override
+        public void close() {
+            try {
+                delegate.close();
+            } finally {
+                if (released.compareAndSet(false, true)) {
+                    slots.release();
+                }
+            }
+        }
+    }
+}
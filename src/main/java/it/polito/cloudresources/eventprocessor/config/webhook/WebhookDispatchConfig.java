@@ -0,0 +1,31 @@
+package it.polito.cloudresources.eventprocessor.config.webhook;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+
+/**
+ * Executor fanning out webhook deliveries.
+ * Each delivery runs on its own virtual thread; the concurrency limit caps how many are in flight
+ * and blocks the deliver stage of the dispatcher when reached, which fills its queue and stops further claims.
+ */
+@Configuration
+public class WebhookDispatchConfig {
+
+    @Value("${webhook.delivery.max-concurrency:256}")
+    private int maxConcurrency;
+
+    @Value("${webhook.delivery.shutdown-timeout-seconds:30}")
+    private long shutdownTimeoutSeconds;
+
+    @Bean
+    public SimpleAsyncTaskExecutor webhookDispatchExecutor() {
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("webhook-dispatcher-");
+        executor.setVirtualThreads(true);
+        executor.setConcurrencyLimit(maxConcurrency);
+        // close() waits up to this long for in-flight deliveries so their outcome is recorded
+        executor.setTaskTerminationTimeout(shutdownTimeoutSeconds * 1000);
+        return executor;
+    }
+}
@@ -0,0 +1,56 @@
+package it.polito.cloudresources.eventprocessor.config.webhook;
+
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.web.client.DefaultResponseErrorHandler;
+import org.springframework.web.client.RestTemplate;
+
+import java.net.http.HttpClient;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * HTTP transport for webhook deliveries.
+ * Backed by a single long-lived JDK HttpClient, which keeps connections alive and reuses them
+ * across deliveries and multiplexes requests over HTTP/2 when the receiver supports it.
+ */
+@Configuration
+@EnableConfigurationProperties({WebhookHttpProperties.class, WebhookRateLimitProperties.class})
+public class WebhookHttpClientConfig {
+
+    // The client doesn't shut down an executor it was given, so the executor is a bean of its own, closed after the client
+    @Bean(destroyMethod = "close")
+    public ExecutorService webhookHttpExecutor() {
+        return Executors.newVirtualThreadPerTaskExecutor();
+    }
+
+    @Bean(destroyMethod = "close")
+    public HttpClient webhookHttpClient(WebhookHttpProperties properties, ExecutorService webhookHttpExecutor) {
+        return HttpClient.newBuilder()
+                .version(properties.getVersion())
+                .connectTimeout(properties.getConnectTimeout())
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .executor(webhookHttpExecutor)
+                .build();
+    }
+
+    @Bean
+    public RestTemplate webhookRestTemplate(HttpClient webhookHttpClient, WebhookHttpProperties properties) {
+        JdkClientHttpRequestFactory requestFactory = new JdkClientHttpRequestFactory(webhookHttpClient);
+        requestFactory.setReadTimeout(properties.getReadTimeout());
+
+        RestTemplate restTemplate = new RestTemplate(requestFactory);
+        restTemplate.getInterceptors().add(new PerHostConnectionLimiter(properties));
+        // Status codes are evaluated by the notifier, which also caps how much of the body is read
+        restTemplate.setErrorHandler(new DefaultResponseErrorHandler() {
+            @Override
+            public boolean hasError(ClientHttpResponse response) {
+                return false;
+            }
+        });
+        return restTemplate;
+    }
+}
@@ -0,0 +1,39 @@
+package it.polito.cloudresources.eventprocessor.config.webhook;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Settings of the HTTP transport used to deliver webhooks.
+ */
+@Data
+@ConfigurationProperties(prefix = "webhook.http")
+public class WebhookHttpProperties {
+
+    // HTTP_2 negotiates HTTP/2 with receivers that support it and falls back to HTTP/1.1 otherwise
+    private HttpClient.Version version = HttpClient.Version.HTTP_2;
+
+    private Duration connectTimeout = Duration.ofSeconds(5);
+
+    private Duration readTimeout = Duration.ofSeconds(10);
+
+    // How long a delivery waits for a free connection slot to its host before failing
+    private Duration acquireTimeout = Duration.ofSeconds(30);
+
+    // Default limit of concurrent connections per destination host
+    private int maxConnectionsPerHost = 32;
+
+    // Per-host overrides of maxConnectionsPerHost, keyed by host name
+    private Map<String, Integer> hostMaxConnections = new HashMap<>();
+
+    // Response bodies are only kept up to this size, the rest is discarded
+    private int maxResponseBodyBytes = 1024;
+
+    // The discarded rest is read up to this size so the connection can be reused; a longer body closes the connection
+    private long maxDrainBytes = 64 * 1024;
+}
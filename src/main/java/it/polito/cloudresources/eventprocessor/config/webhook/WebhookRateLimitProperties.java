@@ -0,0 +1,49 @@
+package it.polito.cloudresources.eventprocessor.config.webhook;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Settings of the adaptive per-destination rate limits of webhook deliveries.
+ */
+@Data
+@ConfigurationProperties(prefix = "webhook.rate-limit")
+public class WebhookRateLimitProperties {
+
+    private boolean enabled = true;
+
+    // Requests per second each destination starts with
+    private double initialRate = 50;
+
+    private double minRate = 1;
+
+    private double maxRate = 1000;
+
+    // Requests that may be sent at once after a quiet period
+    private int burst = 20;
+
+    // Additive increase: requests per second gained per second of successful calls at the current rate
+    private double additiveIncrease = 1;
+
+    // Multiplicative decrease applied on 429 and 503 responses
+    private double decreaseFactor = 0.5;
+
+    // Throttling responses within this window only decrease the rate once
+    private Duration decreaseCooldown = Duration.ofSeconds(1);
+
+    // Deliveries wait in memory up to this long for a token, longer waits go back to the outbox
+    private Duration maxWait = Duration.ofSeconds(1);
+
+    // Upper bound of honored Retry-After values
+    private Duration maxRetryAfter = Duration.ofHours(1);
+
+    // Initial rate per destination host, overriding initialRate
+    private Map<String, Double> hostRates = new HashMap<>();
+
+    // Initial rate per webhook ID; such webhooks get a bucket of their own instead of sharing their host's
+    private Map<Long, Double> webhookRates = new HashMap<>();
+}
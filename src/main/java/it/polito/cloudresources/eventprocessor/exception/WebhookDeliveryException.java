@@ -0,0 +1,46 @@
+package it.polito.cloudresources.eventprocessor.exception;
+
+import lombok.Getter;
+
+/**
+ * Raised when a webhook delivery attempt fails.
+ * Carries the HTTP status (if a response was received) and whether the attempt is worth retrying.
+ * A throttled delivery (rate limit reached, or the receiver asked to slow down) carries the delay after
+ * which it should be retried, and only counts as an attempt past webhook.delivery.max-deferrals.
+ */
+@Getter
+public class WebhookDeliveryException extends RuntimeException {
+
+    private final Integer statusCode;
+    private final boolean retryable;
+    private final Long retryAfterMillis;
+
+    public WebhookDeliveryException(String message, Integer statusCode, boolean retryable) {
+        super(message);
+        this.statusCode = statusCode;
+        this.retryable = retryable;
+        this.retryAfterMillis = null;
+    }
+
+    public WebhookDeliveryException(String message, Throwable cause) {
+        super(message, cause);
+        this.statusCode = null;
+        this.retryable = true;
+        this.retryAfterMillis = null;
+    }
+
+    private WebhookDeliveryException(String message, Integer statusCode, long retryAfterMillis) {
+        super(message);
+        this.statusCode = statusCode;
+        this.retryable = true;
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    public static WebhookDeliveryException throttled(String message, Integer statusCode, long retryAfterMillis) {
+        return new WebhookDeliveryException(message, statusCode, retryAfterMillis);
+    }
+
+    public boolean isThrottled() {
+        return retryAfterMillis != null;
+    }
+}
@@ -0,0 +1,37 @@
+package it.polito.cloudresources.eventprocessor.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.ZonedDateTime;
+
+/**
+ * High-water mark of a resource partition.
+ * Every unnotified start or end of the partition up to scannedUntil has been checked by a successful scan or
+ * catch-up, so after downtime or a failover the catch-up only needs to look at the events that became due since.
+ */
+@Entity
+@Table(name = "partition_watermarks")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class PartitionWatermark {
+
+    @Id
+    @Column(name = "partition_id")
+    private Long partitionId;
+
+    @Column(name = "scanned_until", nullable = false)
+    private ZonedDateTime scannedUntil;
+
+    // Node that last advanced the mark
+    @Column(name = "node_id", length = 255)
+    private String nodeId;
+
+    @Column(name = "updated_at", nullable = false)
+    private ZonedDateTime updatedAt;
+}
@@ -0,0 +1,35 @@
+package it.polito.cloudresources.eventprocessor.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.ZonedDateTime;
+
+/**
+ * Membership row of a running processor instance.
+ * Each instance refreshes its heartbeat periodically; instances whose heartbeat is older than the
+ * node timeout are considered gone and their partitions are reassigned to the remaining ones.
+ * The table is created by the V1 migration (db/migration/{vendor}/V1__event_processor_tables.sql);
+ * keep the two in sync, as the schema is validated against this mapping at startup.
+ */
+@Entity
+@Table(name = "processor_nodes")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ProcessorNode {
+
+    @Id
+    @Column(name = "node_id", length = 255)
+    private String nodeId;
+
+    @Column(name = "started_at", nullable = false)
+    private ZonedDateTime startedAt;
+
+    @Column(name = "last_heartbeat", nullable = false)
+    private ZonedDateTime lastHeartbeat;
+}
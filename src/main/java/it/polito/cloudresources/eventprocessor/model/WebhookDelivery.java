@@ -0,0 +1,100 @@
+package it.polito.cloudresources.eventprocessor.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Outbox entry for a single webhook notification.
+ * Rows are written in the same transaction that marks the event as notified and are
+ * drained by the dispatcher workers, so a failed delivery is retried instead of lost.
+ * The table is created by the V1 migration (db/migration/{vendor}/V1__event_processor_tables.sql);
+ * keep the two in sync, as the schema is validated against this mapping at startup.
+ */
+@Entity
+@Table(name = "webhook_deliveries")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class WebhookDelivery {
+
+    /**
+     * Length of batch_event_ids; larger batches are split over several deliveries
+     */
+    public static final int BATCH_EVENT_IDS_LENGTH = 4000;
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "webhook_id", nullable = false)
+    private Long webhookId;
+
+    // For batch deliveries, the first event of the batch
+    @Column(name = "event_id", nullable = false)
+    private Long eventId;
+
+    // Comma-separated IDs of all the events in a batch delivery, null for single-event deliveries
+    @Column(name = "batch_event_ids", length = BATCH_EVENT_IDS_LENGTH)
+    private String batchEventIds;
+
+    // Keycloak user the events belong to
+    @Column(name = "user_id")
+    private String userId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "event_type", nullable = false, length = 50)
+    private WebhookEventType eventType;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false, length = 20)
+    @Builder.Default
+    private WebhookDeliveryStatus status = WebhookDeliveryStatus.PENDING;
+
+    @Column(name = "attempts", nullable = false)
+    private int attempts;
+
+    // Throttled responses that put the delivery back without counting an attempt, see webhook.delivery.max-deferrals
+    @Column(name = "deferrals", nullable = false)
+    private int deferrals;
+
+    @Column(name = "next_attempt_at", nullable = false)
+    private ZonedDateTime nextAttemptAt;
+
+    // Set while IN_FLIGHT; an expired lease means the worker died and the row can be claimed again
+    @Column(name = "lease_expires_at")
+    private ZonedDateTime leaseExpiresAt;
+
+    @Column(name = "last_status_code")
+    private Integer lastStatusCode;
+
+    @Column(name = "last_error", length = 1000)
+    private String lastError;
+
+    @Column(name = "created_at", nullable = false)
+    private ZonedDateTime createdAt;
+
+    @Column(name = "delivered_at")
+    private ZonedDateTime deliveredAt;
+
+    public boolean isBatch() {
+        return batchEventIds != null;
+    }
+
+    /**
+     * IDs of the events this delivery notifies: the whole batch, or just eventId.
+     */
+    public List<Long> getEventIds() {
+        if (batchEventIds == null) {
+            return List.of(eventId);
+        }
+        return Arrays.stream(batchEventIds.split(",")).map(Long::valueOf).toList();
+    }
+}
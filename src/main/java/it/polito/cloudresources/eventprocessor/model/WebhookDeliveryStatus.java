@@ -0,0 +1,11 @@
+package it.polito.cloudresources.eventprocessor.model;
+
+/**
+ * Lifecycle states of a webhook delivery stored in the outbox.
+ */
+public enum WebhookDeliveryStatus {
+    PENDING,    // Waiting for its next attempt
+    IN_FLIGHT,  // Claimed by a dispatcher worker, lease expires at leaseExpiresAt
+    DELIVERED,  // Receiver acknowledged the notification with a 2xx response
+    DEAD        // Gave up after max attempts or a non-retryable failure
+}
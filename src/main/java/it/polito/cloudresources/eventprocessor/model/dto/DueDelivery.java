@@ -0,0 +1,7 @@
+package it.polito.cloudresources.eventprocessor.model.dto;
+
+/**
+ * Projection of a due outbox row, enough to admit it through its webhook's isolation before claiming it.
+ */
+public record DueDelivery(Long id, Long webhookId) {
+}
@@ -0,0 +1,15 @@
+package it.polito.cloudresources.eventprocessor.model.dto;
+
+import java.time.ZonedDateTime;
+
+/**
+ * Projection of the fields that determine when an event's start and end notifications are due,
+ * used to reschedule single events on change notifications.
+ */
+public record EventSchedule(Long id,
+                            Long resourceId,
+                            ZonedDateTime start,
+                            ZonedDateTime end,
+                            ZonedDateTime startNotifiedAt,
+                            ZonedDateTime endNotifiedAt) {
+}
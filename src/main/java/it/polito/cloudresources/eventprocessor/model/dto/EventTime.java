@@ -0,0 +1,10 @@
+package it.polito.cloudresources.eventprocessor.model.dto;
+
+import java.time.ZonedDateTime;
+
+/**
+ * Lightweight projection of an event's ID and start (or end) time, used by the due-event scans
+ * so that scanning never hydrates full entities into the persistence context.
+ */
+public record EventTime(Long id, ZonedDateTime time) {
+}
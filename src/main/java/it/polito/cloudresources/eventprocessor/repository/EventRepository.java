@@ -1,47 +1,106 @@
 package it.polito.cloudresources.eventprocessor.repository;
 
 import it.polito.cloudresources.eventprocessor.model.Event;
+import it.polito.cloudresources.eventprocessor.model.dto.EventSchedule;
+import it.polito.cloudresources.eventprocessor.model.dto.EventTime;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.ZonedDateTime;
+import java.util.Collection;
 import java.util.List;
 
 @Repository
 public interface EventRepository extends JpaRepository<Event, Long> {
 
+    // JDBC fetch size of the due-event scans, matches the default scan chunk size
+    String SCAN_FETCH_SIZE = "500";
+
     /**
-     * Finds events that are starting or ending within the given time window and have not been processed yet.
-     * An event's start is considered unprocessed if startNotifiedAt is null.
-     * An event's end is considered unprocessed if endNotifiedAt is null.
+     * Finds events that are starting or ending within the given time window and have not been processed yet,
+     * in a single pass for both transitions. An event's start is considered unprocessed if startNotifiedAt is null,
+     * its end if endNotifiedAt is null; the caller tells which of the two is due from the returned fields.
+     * Keyset-paginated on id: pass the last ID of the previous chunk as afterId (-1 for the first chunk) and the
+     * chunk size as the page size. Only events of resources in the given partitions (resource ID mod partitionCount)
+     * are returned. The partition predicate is a filter on the rows of the time range, not an index condition:
+     * every replica reads the same index range (kept small by the partial due-event indexes) and skips the events
+     * of the partitions it doesn't own.
      *
      * @param windowStart The start of the time window.
      * @param windowEnd   The end of the time window.
-     * @return A list of unprocessed events within the window.
+     * @return A chunk of unprocessed events within the window.
      */
-    @Query("SELECT e FROM Event e WHERE " +
+    @Query("SELECT new it.polito.cloudresources.eventprocessor.model.dto.EventSchedule(" +
+           "e.id, e.resource.id, e.start, e.end, e.startNotifiedAt, e.endNotifiedAt) FROM Event e " +
+           "WHERE e.id > :afterId AND (" +
            "(e.startNotifiedAt IS NULL AND e.start >= :windowStart AND e.start <= :windowEnd) OR " +
-           "(e.endNotifiedAt IS NULL AND e.end >= :windowStart AND e.end <= :windowEnd)")
-    List<Event> findUnprocessedEventsInWindow(@Param("windowStart") ZonedDateTime windowStart,
-                                              @Param("windowEnd") ZonedDateTime windowEnd);
+           "(e.endNotifiedAt IS NULL AND e.end >= :windowStart AND e.end <= :windowEnd)) " +
+           "AND MOD(e.resource.id, :partitionCount) IN :partitions " +
+           "ORDER BY e.id")
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = SCAN_FETCH_SIZE))
+    List<EventSchedule> findUnprocessedEventsInWindow(@Param("windowStart") ZonedDateTime windowStart,
+                                                      @Param("windowEnd") ZonedDateTime windowEnd,
+                                                      @Param("afterId") Long afterId,
+                                                      @Param("partitionCount") long partitionCount,
+                                                      @Param("partitions") Collection<Long> partitions,
+                                                      Pageable chunk);
 
     /**
      * Find events that start within a date range and haven't had their start notification sent.
+     * Used by the catch-up, whose ranges can span days: the (start, id) order follows the index, so each chunk
+     * costs the same however long the range. Keyset-paginated on (start, id): pass the last row of the previous chunk as afterTime/afterId
+     * (windowStart and -1 for the first chunk) and the chunk size as the page size.
+     * Only events of resources in the given partitions (resource ID mod partitionCount) are returned; as for
+     * findUnprocessedEventsInWindow, that is a filter on the index range, which is read whole.
      */
-    @Query("SELECT e FROM Event e WHERE e.startNotifiedAt IS NULL AND e.start >= :startDate AND e.start <= :endDate")
-    List<Event> findUnprocessedEventsStartingBetween(
-            @Param("startDate") ZonedDateTime startDate,
-            @Param("endDate") ZonedDateTime endDate);
+    @Query("SELECT new it.polito.cloudresources.eventprocessor.model.dto.EventTime(e.id, e.start) FROM Event e " +
+           "WHERE e.startNotifiedAt IS NULL AND e.start <= :endDate " +
+           "AND (e.start > :afterTime OR (e.start = :afterTime AND e.id > :afterId)) " +
+           "AND MOD(e.resource.id, :partitionCount) IN :partitions " +
+           "ORDER BY e.start, e.id")
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = SCAN_FETCH_SIZE))
+    List<EventTime> findUnprocessedEventsStartingBetween(
+            @Param("afterTime") ZonedDateTime afterTime,
+            @Param("afterId") Long afterId,
+            @Param("endDate") ZonedDateTime endDate,
+            @Param("partitionCount") long partitionCount,
+            @Param("partitions") Collection<Long> partitions,
+            Pageable chunk);
 
     /**
      * Find events that end within a date range and haven't had their end notification sent.
+     * Keyset-paginated on (end, id), see findUnprocessedEventsStartingBetween.
+     */
+    @Query("SELECT new it.polito.cloudresources.eventprocessor.model.dto.EventTime(e.id, e.end) FROM Event e " +
+           "WHERE e.endNotifiedAt IS NULL AND e.end <= :endDate " +
+           "AND (e.end > :afterTime OR (e.end = :afterTime AND e.id > :afterId)) " +
+           "AND MOD(e.resource.id, :partitionCount) IN :partitions " +
+           "ORDER BY e.end, e.id")
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = SCAN_FETCH_SIZE))
+    List<EventTime> findUnprocessedEventsEndingBetween(
+            @Param("afterTime") ZonedDateTime afterTime,
+            @Param("afterId") Long afterId,
+            @Param("endDate") ZonedDateTime endDate,
+            @Param("partitionCount") long partitionCount,
+            @Param("partitions") Collection<Long> partitions,
+            Pageable chunk);
+
+    /**
+     * Find the schedule-relevant fields of the given events, without loading the entities.
      */
-    @Query("SELECT e FROM Event e WHERE e.endNotifiedAt IS NULL AND e.end >= :startDate AND e.end <= :endDate")
-    List<Event> findUnprocessedEventsEndingBetween(
-            @Param("startDate") ZonedDateTime startDate,
-            @Param("endDate") ZonedDateTime endDate);
+    @Query("SELECT new it.polito.cloudresources.eventprocessor.model.dto.EventSchedule(" +
+           "e.id, e.resource.id, e.start, e.end, e.startNotifiedAt, e.endNotifiedAt) " +
+           "FROM Event e WHERE e.id IN :ids")
+    List<EventSchedule> findSchedulesByIdIn(@Param("ids") Collection<Long> ids);
 
     /**
      * Find currently active events for a user (events that have started but not yet ended).
@@ -50,4 +109,62 @@ public interface EventRepository extends JpaRepository<Event, Long> {
     List<Event> findActiveEventsForUser(
             @Param("keycloakId") String keycloakId,
             @Param("currentTime") ZonedDateTime currentTime);
+
+    /**
+     * Find the events of several users that are active at some instant between from and to (started by to,
+     * not ended by from), with their resource and resource type. With from equal to to, the events active at that instant.
+     */
+    @Query("SELECT e FROM Event e JOIN FETCH e.resource r JOIN FETCH r.type " +
+           "WHERE e.keycloakId IN :keycloakIds AND e.start <= :to AND e.end > :from")
+    List<Event> findActiveEventsForUsers(
+            @Param("keycloakIds") Collection<String> keycloakIds,
+            @Param("from") ZonedDateTime from,
+            @Param("to") ZonedDateTime to);
+
+    /**
+     * Find events together with their resource and resource type in a single query, so webhook
+     * payloads can be built outside of a transaction.
+     */
+    @Query("SELECT e FROM Event e JOIN FETCH e.resource r JOIN FETCH r.type WHERE e.id IN :ids")
+    List<Event> findAllWithResourceByIdIn(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Lock the given events that still await their start notification, with FOR UPDATE SKIP LOCKED.
+     * Events locked by another replica are skipped, and the lock is held until the stamp commits,
+     * so each start is notified by exactly one replica. Locks of a crashed replica are released
+     * by the database together with its connection.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = LockHints.SKIP_LOCKED))
+    @Query("SELECT e FROM Event e WHERE e.id IN :ids AND e.startNotifiedAt IS NULL")
+    List<Event> claimUnnotifiedStarts(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Lock the given events that still await their end notification, with FOR UPDATE SKIP LOCKED.
+     * See claimUnnotifiedStarts.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = LockHints.SKIP_LOCKED))
+    @Query("SELECT e FROM Event e WHERE e.id IN :ids AND e.endNotifiedAt IS NULL")
+    List<Event> claimUnnotifiedEnds(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Mark events as start-notified with a single set-based UPDATE.
+     * Rows that were already stamped are left untouched.
+     *
+     * @return Number of rows updated
+     */
+    @Modifying
+    @Query("UPDATE Event e SET e.startNotifiedAt = :notifiedAt WHERE e.id IN :ids AND e.startNotifiedAt IS NULL")
+    int markStartNotified(@Param("ids") Collection<Long> ids, @Param("notifiedAt") ZonedDateTime notifiedAt);
+
+    /**
+     * Mark events as end-notified with a single set-based UPDATE.
+     * Rows that were already stamped are left untouched.
+     *
+     * @return Number of rows updated
+     */
+    @Modifying
+    @Query("UPDATE Event e SET e.endNotifiedAt = :notifiedAt WHERE e.id IN :ids AND e.endNotifiedAt IS NULL")
+    int markEndNotified(@Param("ids") Collection<Long> ids, @Param("notifiedAt") ZonedDateTime notifiedAt);
 }
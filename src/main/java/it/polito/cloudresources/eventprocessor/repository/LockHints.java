@@ -0,0 +1,13 @@
+package it.polito.cloudresources.eventprocessor.repository;
+
+/**
+ * Query hint values shared by the repositories that claim rows.
+ */
+final class LockHints {
+
+    // Lock timeout hint value that Hibernate renders as SKIP LOCKED (LockOptions.SKIP_LOCKED)
+    static final String SKIP_LOCKED = "-2";
+
+    private LockHints() {
+    }
+}
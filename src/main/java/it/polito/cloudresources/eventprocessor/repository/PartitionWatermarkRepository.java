@@ -0,0 +1,35 @@
+package it.polito.cloudresources.eventprocessor.repository;
+
+import it.polito.cloudresources.eventprocessor.model.PartitionWatermark;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.ZonedDateTime;
+import java.util.Collection;
+
+/**
+ * Repository for the per-partition high-water marks of the catch-up
+ */
+@Repository
+public interface PartitionWatermarkRepository extends JpaRepository<PartitionWatermark, Long> {
+
+    /**
+     * Move the marks of the given partitions forward. Marks are never moved back, so a node that still
+     * scans a partition it is about to lose can't undo the progress of the new owner.
+     * Runs in its own transaction: the catch-up calls it after the drain, outside of any transaction.
+     *
+     * @return Number of rows updated
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE PartitionWatermark w SET w.scannedUntil = :scannedUntil, w.nodeId = :nodeId, w.updatedAt = :now " +
+           "WHERE w.partitionId IN :partitions AND w.scannedUntil < :scannedUntil")
+    int advance(@Param("partitions") Collection<Long> partitions,
+                @Param("scannedUntil") ZonedDateTime scannedUntil,
+                @Param("nodeId") String nodeId,
+                @Param("now") ZonedDateTime now);
+}
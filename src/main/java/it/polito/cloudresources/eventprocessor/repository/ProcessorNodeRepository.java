@@ -0,0 +1,42 @@
+package it.polito.cloudresources.eventprocessor.repository;
+
+import it.polito.cloudresources.eventprocessor.model.ProcessorNode;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.ZonedDateTime;
+import java.util.List;
+
+/**
+ * Repository for the processor membership table
+ */
+@Repository
+public interface ProcessorNodeRepository extends JpaRepository<ProcessorNode, String> {
+
+    /**
+     * Refresh the heartbeat of a node
+     *
+     * @return Number of rows updated, 0 if the node is not registered (yet, or any more)
+     */
+    @Modifying
+    @Query("UPDATE ProcessorNode n SET n.lastHeartbeat = :now WHERE n.nodeId = :nodeId")
+    int touch(@Param("nodeId") String nodeId, @Param("now") ZonedDateTime now);
+
+    /**
+     * Find the IDs of the nodes whose heartbeat is more recent than the given time
+     */
+    @Query("SELECT n.nodeId FROM ProcessorNode n WHERE n.lastHeartbeat > :aliveSince ORDER BY n.nodeId")
+    List<String> findLiveNodeIds(@Param("aliveSince") ZonedDateTime aliveSince);
+
+    /**
+     * Remove nodes that stopped sending heartbeats
+     *
+     * @return Number of rows deleted
+     */
+    @Modifying
+    @Query("DELETE FROM ProcessorNode n WHERE n.lastHeartbeat < :before")
+    int deleteByLastHeartbeatBefore(@Param("before") ZonedDateTime before);
+}
@@ -4,6 +4,8 @@ import it.polito.cloudresources.eventprocessor.model.SshKey;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 /**
@@ -19,6 +21,14 @@ public interface SshKeyRepository extends JpaRepository<SshKey, Long> {
      * @return Optional containing the SSH key if found
      */
     Optional<SshKey> findByUserId(String userId);
+
+    /**
+     * Find SSH keys of several users in one query
+     *
+     * @param userIds The Keycloak user IDs
+     * @return The SSH keys found (users without a key are omitted)
+     */
+    List<SshKey> findByUserIdIn(Collection<String> userIds);
     
     /**
      * Delete SSH key by user ID
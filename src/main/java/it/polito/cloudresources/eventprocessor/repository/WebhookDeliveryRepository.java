@@ -0,0 +1,114 @@
+package it.polito.cloudresources.eventprocessor.repository;
+
+import it.polito.cloudresources.eventprocessor.model.WebhookDelivery;
+import it.polito.cloudresources.eventprocessor.model.WebhookDeliveryStatus;
+import it.polito.cloudresources.eventprocessor.model.dto.DueDelivery;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.ZonedDateTime;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Repository for the webhook delivery outbox
+ */
+@Repository
+public interface WebhookDeliveryRepository extends JpaRepository<WebhookDelivery, Long> {
+
+    /**
+     * Find deliveries that are ready to be attempted: pending rows whose backoff has elapsed
+     * and in-flight rows whose lease expired (e.g. the pod holding them crashed).
+     *
+     * @param now      The current time.
+     * @param excludedWebhookIds Webhooks that cannot take deliveries right now; must not be empty.
+     * @param pageable Limits the size of the returned batch.
+     * @return The due deliveries, oldest first.
+     */
+    @Query("SELECT new it.polito.cloudresources.eventprocessor.model.dto.DueDelivery(d.id, d.webhookId) FROM WebhookDelivery d WHERE (" +
+           "(d.status = it.polito.cloudresources.eventprocessor.model.WebhookDeliveryStatus.PENDING AND d.nextAttemptAt <= :now) OR " +
+           "(d.status = it.polito.cloudresources.eventprocessor.model.WebhookDeliveryStatus.IN_FLIGHT AND d.leaseExpiresAt < :now)) " +
+           "AND d.webhookId NOT IN :excludedWebhookIds " +
+           "ORDER BY d.nextAttemptAt, d.id")
+    List<DueDelivery> findDueDeliveries(@Param("now") ZonedDateTime now,
+                                        @Param("excludedWebhookIds") Collection<Long> excludedWebhookIds,
+                                        Pageable pageable);
+
+    /**
+     * Lock the given deliveries with FOR UPDATE SKIP LOCKED, re-checking that they are still due.
+     * Rows locked or already claimed by another replica are skipped, so concurrent replicas end up
+     * with disjoint batches. Pagination is done by findDueDeliveries, since Oracle does not allow
+     * FOR UPDATE together with row limiting.
+     *
+     * @param ids Candidate IDs from findDueDeliveries
+     * @param now The current time
+     * @return The deliveries locked by this transaction
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = LockHints.SKIP_LOCKED))
+    @Query("SELECT d FROM WebhookDelivery d WHERE d.id IN :ids AND (" +
+           "(d.status = it.polito.cloudresources.eventprocessor.model.WebhookDeliveryStatus.PENDING AND d.nextAttemptAt <= :now) OR " +
+           "(d.status = it.polito.cloudresources.eventprocessor.model.WebhookDeliveryStatus.IN_FLIGHT AND d.leaseExpiresAt < :now)) " +
+           "ORDER BY d.nextAttemptAt, d.id")
+    List<WebhookDelivery> lockDueDeliveries(@Param("ids") Collection<Long> ids, @Param("now") ZonedDateTime now);
+
+    /**
+     * Put claimed deliveries back in the queue without counting an attempt.
+     *
+     * @param ids The deliveries to release
+     * @param nextAttemptAt When they may be claimed again
+     * @return Number of rows updated
+     */
+    @Modifying
+    @Query("UPDATE WebhookDelivery d SET " +
+           "d.status = it.polito.cloudresources.eventprocessor.model.WebhookDeliveryStatus.PENDING, " +
+           "d.nextAttemptAt = :nextAttemptAt, d.leaseExpiresAt = NULL " +
+           "WHERE d.id IN :ids AND d.status = it.polito.cloudresources.eventprocessor.model.WebhookDeliveryStatus.IN_FLIGHT")
+    int defer(@Param("ids") Collection<Long> ids, @Param("nextAttemptAt") ZonedDateTime nextAttemptAt);
+
+    /**
+     * Count deliveries in the given state.
+     */
+    long countByStatus(WebhookDeliveryStatus status);
+
+    /**
+     * Find deliveries delivered before the given time, for the purge.
+     *
+     * @param before   Deliveries delivered before this time are returned
+     * @param pageable Limits the size of the returned batch
+     * @return IDs of the deliveries, in no particular order
+     */
+    @Query("SELECT d.id FROM WebhookDelivery d " +
+           "WHERE d.status = it.polito.cloudresources.eventprocessor.model.WebhookDeliveryStatus.DELIVERED AND d.deliveredAt < :before")
+    List<Long> findDeliveredBefore(@Param("before") ZonedDateTime before, Pageable pageable);
+
+    /**
+     * Find dead-lettered deliveries created before the given time, for the purge.
+     *
+     * @param before   Deliveries created before this time are returned
+     * @param pageable Limits the size of the returned batch
+     * @return IDs of the deliveries, in no particular order
+     */
+    @Query("SELECT d.id FROM WebhookDelivery d " +
+           "WHERE d.status = it.polito.cloudresources.eventprocessor.model.WebhookDeliveryStatus.DEAD AND d.createdAt < :before")
+    List<Long> findDeadBefore(@Param("before") ZonedDateTime before, Pageable pageable);
+
+    /**
+     * Delete the given deliveries, in a transaction of their own.
+     *
+     * @return Number of rows deleted
+     */
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM WebhookDelivery d WHERE d.id IN :ids")
+    int deleteByIdIn(@Param("ids") Collection<Long> ids);
+}
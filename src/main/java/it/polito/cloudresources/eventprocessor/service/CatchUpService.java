@@ -0,0 +1,243 @@
+package it.polito.cloudresources.eventprocessor.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import it.polito.cloudresources.eventprocessor.model.PartitionWatermark;
+import it.polito.cloudresources.eventprocessor.model.WebhookEventType;
+import it.polito.cloudresources.eventprocessor.model.dto.EventTime;
+import it.polito.cloudresources.eventprocessor.repository.EventRepository;
+import it.polito.cloudresources.eventprocessor.repository.PartitionWatermarkRepository;
+import it.polito.cloudresources.eventprocessor.util.AdaptiveTokenBucket;
+import it.polito.cloudresources.eventprocessor.util.DateTimeUtils;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Catches up on the starts and ends that became due while nobody was scanning a partition: during a
+ * deploy or an outage longer than the grace window, or after the partition's previous owner died.
+ * Each partition has a persisted high-water mark (partition_watermarks), the time up to which its events
+ * were checked. Periodically, the events due between the mark and the window of the regular scans are
+ * notified right away, with the owned partitions split over parallel workers and the overall rate capped,
+ * and the mark is advanced. In steady state the range is a single scan interval and holds nothing;
+ * after downtime, recovery takes as long as the backlog needs at the capped rate, and nothing is lost.
+ * Transitions overdue for longer than stale-after are notified or only marked, depending on the stale policy;
+ * nothing older than max-lookback is looked at.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class CatchUpService {
+
+    /**
+     * What to do with transitions overdue for longer than stale-after
+     */
+    public enum StalePolicy { NOTIFY, SKIP }
+
+    private final EventRepository eventRepository;
+    private final PartitionWatermarkRepository partitionWatermarkRepository;
+    private final PartitionAssignmentService partitionAssignmentService;
+    private final EventProcessorService eventProcessorService;
+    private final EventNotificationService eventNotificationService;
+    private final DateTimeUtils dateTimeUtils;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${event.processor.catch-up.enabled:true}")
+    private boolean enabled;
+
+    @Value("${event.processor.rate}")
+    private long scanRateMillis;
+
+    @Value("${event.processor.catch-up.parallelism:4}")
+    private int parallelism;
+
+    @Value("${event.processor.catch-up.max-events-per-second:200}")
+    private double maxEventsPerSecond;
+
+    @Value("${event.processor.catch-up.max-lookback-hours:168}")
+    private long maxLookbackHours;
+
+    @Value("${event.processor.catch-up.stale-after-minutes:60}")
+    private long staleAfterMinutes;
+
+    @Value("${event.processor.catch-up.stale-policy:NOTIFY}")
+    private StalePolicy stalePolicy;
+
+    @Value("${event.processor.scan.chunk-size:500}")
+    private int chunkSize;
+
+    // Shared by all workers, so the cap holds whatever the parallelism
+    private AdaptiveTokenBucket throughputCap;
+
+    @PostConstruct
+    void init() {
+        throughputCap = new AdaptiveTokenBucket(maxEventsPerSecond, maxEventsPerSecond, maxEventsPerSecond,
+                Math.max(chunkSize, (int) Math.ceil(maxEventsPerSecond)), 0, 1, 0, System.nanoTime());
+    }
+
+    /**
+     * Notify what became due between each owned partition's high-water mark and the window of the
+     * regular scans, then advance the marks.
+     */
+    @Scheduled(fixedDelayString = "${event.processor.catch-up.interval:${event.processor.rate}}")
+    public void catchUp() {
+        if (!enabled) {
+            return;
+        }
+        Set<Long> partitions = partitionAssignmentService.ownedPartitions();
+        ZonedDateTime scannedFrom = eventProcessorService.scannedFrom();
+        if (partitions.isEmpty() || scannedFrom == null) {
+            log.debug("Regular scans not running yet, skipping catch-up");
+            return;
+        }
+        ZonedDateTime now = dateTimeUtils.getCurrentDateTime();
+        ZonedDateTime oldest = now.minusHours(maxLookbackHours);
+
+        Map<Long, ZonedDateTime> marks = partitionWatermarkRepository.findAllById(partitions).stream()
+                .collect(Collectors.toMap(PartitionWatermark::getPartitionId, PartitionWatermark::getScannedUntil));
+        List<Long> unmarked = partitions.stream().filter(partition -> !marks.containsKey(partition)).sorted().toList();
+        if (!unmarked.isEmpty()) {
+            // Partitions never scanned before start from the regular window, there is no gap to fill
+            log.info("Initializing the high-water mark of {} partitions to {}", unmarked.size(), scannedFrom);
+            initialize(unmarked, scannedFrom, now);
+        }
+
+        // Partitions scanned together share their mark, so in steady state this is a single group
+        Map<ZonedDateTime, List<Long>> byMark = new TreeMap<>();
+        marks.forEach((partition, mark) -> {
+            if (mark.isBefore(scannedFrom)) {
+                byMark.computeIfAbsent(mark.isBefore(oldest) ? oldest : mark, m -> new ArrayList<>()).add(partition);
+            }
+        });
+        byMark.forEach((from, group) -> catchUp(group, from, scannedFrom, now));
+    }
+
+    private void catchUp(List<Long> partitions, ZonedDateTime from, ZonedDateTime to, ZonedDateTime now) {
+        long partitionCount = partitionAssignmentService.partitionCount();
+        ZonedDateTime staleBefore = now.minusMinutes(staleAfterMinutes);
+        // In steady state the mark trails the scans by about one scan interval; more than two means missed scans
+        boolean backlog = from.isBefore(to.minus(Duration.ofMillis(2 * scanRateMillis)));
+        if (backlog) {
+            log.info("Catching up on {} partitions from {} to {}", partitions.size(), from, to);
+        }
+
+        // For a backlog, partitions are spread round-robin over the workers, each scanning its own share
+        int workers = backlog ? Math.min(parallelism, partitions.size()) : 1;
+        List<List<Long>> shares = new ArrayList<>();
+        for (int i = 0; i < workers; i++) {
+            shares.add(new ArrayList<>());
+        }
+        for (int i = 0; i < partitions.size(); i++) {
+            shares.get(i % workers).add(partitions.get(i));
+        }
+
+        int notified = 0;
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (List<Long> share : shares) {
+                results.add(executor.submit(() ->
+                        drain(WebhookEventType.EVENT_START, share, partitionCount, from, to, staleBefore)
+                        + drain(WebhookEventType.EVENT_END, share, partitionCount, from, to, staleBefore)));
+            }
+            for (Future<Integer> result : results) {
+                notified += result.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } catch (Exception e) {
+            // The marks stay where they are, the next run starts over from them
+            log.error("Error catching up on partitions {} from {}: {}", partitions, from, e.getMessage(), e);
+            return;
+        }
+
+        partitionWatermarkRepository.advance(partitions, to, partitionAssignmentService.nodeId(), now);
+        if (backlog || notified > 0) {
+            log.info("Caught up on {} partitions up to {}: {} start/end transitions handled", partitions.size(), to, notified);
+        }
+    }
+
+    private int drain(WebhookEventType eventType, List<Long> partitions, long partitionCount,
+                      ZonedDateTime from, ZonedDateTime to, ZonedDateTime staleBefore) throws InterruptedException {
+        Function<EventTime, List<EventTime>> nextChunk = eventType == WebhookEventType.EVENT_START
+                ? position -> eventRepository.findUnprocessedEventsStartingBetween(
+                        position.time(), position.id(), to, partitionCount, partitions, PageRequest.of(0, chunkSize))
+                : position -> eventRepository.findUnprocessedEventsEndingBetween(
+                        position.time(), position.id(), to, partitionCount, partitions, PageRequest.of(0, chunkSize));
+
+        EventTime position = new EventTime(-1L, from);
+        int handled = 0;
+        List<EventTime> chunk;
+        do {
+            chunk = nextChunk.apply(position);
+            if (chunk.isEmpty()) {
+                break;
+            }
+            position = chunk.get(chunk.size() - 1);
+
+            long waitNanos = throughputCap.reserve(System.nanoTime(), chunk.size());
+            if (waitNanos > 0) {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            }
+
+            List<Long> stale = new ArrayList<>();
+            List<Long> due = new ArrayList<>();
+            for (EventTime event : chunk) {
+                (event.time().isBefore(staleBefore) ? stale : due).add(event.id());
+            }
+            if (stalePolicy == StalePolicy.SKIP && !stale.isEmpty()) {
+                handled += record(eventType, "skipped", eventNotificationService.skipStaleEvents(eventType, stale));
+            } else {
+                due.addAll(stale);
+            }
+            if (!due.isEmpty()) {
+                handled += record(eventType, "notified", eventNotificationService.notifyDueEvents(eventType, due, to));
+            }
+        } while (chunk.size() == chunkSize);
+        return handled;
+    }
+
+    private void initialize(List<Long> partitions, ZonedDateTime scannedUntil, ZonedDateTime now) {
+        try {
+            partitionWatermarkRepository.saveAll(partitions.stream()
+                    .map(partition -> PartitionWatermark.builder()
+                            .partitionId(partition)
+                            .scannedUntil(scannedUntil)
+                            .nodeId(partitionAssignmentService.nodeId())
+                            .updatedAt(now)
+                            .build())
+                    .toList());
+        } catch (Exception e) {
+            // Another node initialized them concurrently, the next run reads its marks
+            log.debug("Could not initialize high-water marks of partitions {}: {}", partitions, e.getMessage());
+        }
+    }
+
+    private int record(WebhookEventType eventType, String outcome, int count) {
+        Counter.builder("event.catchup.transitions")
+                .description("Start/end transitions handled by the catch-up after downtime or a failover")
+                .tag("type", eventType.name())
+                .tag("outcome", outcome)
+                .register(meterRegistry)
+                .increment(count);
+        return count;
+    }
+}
@@ -0,0 +1,194 @@
+package it.polito.cloudresources.eventprocessor.service;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.keycloak.representations.idm.UserRepresentation;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Bounded TTL caches in front of the lookups used to enrich webhook payloads
+ * (Keycloak users, SSH keys and site names).
+ * Lookups are made in bulk per batch, and concurrent misses for the same key are coalesced into a single
+ * backend call: a caller asking for a key that is being loaded waits for that load.
+ * Lookups that find nothing (or fail) are not cached, so they are retried on the next delivery.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class EnrichmentCacheService {
+
+    public static final String USERS = "users";
+    public static final String SSH_KEYS = "sshKeys";
+    public static final String SITE_NAMES = "siteNames";
+
+    private final KeycloakService keycloakService;
+    private final SshKeyService sshKeyService;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${enrichment.cache.max-size:10000}")
+    private long maxSize;
+
+    @Value("${enrichment.cache.user-ttl-seconds:300}")
+    private long userTtlSeconds;
+
+    @Value("${enrichment.cache.ssh-key-ttl-seconds:900}")
+    private long sshKeyTtlSeconds;
+
+    @Value("${enrichment.cache.site-name-ttl-seconds:3600}")
+    private long siteNameTtlSeconds;
+
+    // Keycloak lookups in flight at once across all bulk loads, at most one per pooled connection
+    @Value("${keycloak.client.connection-pool-size:20}")
+    private int maxConcurrentLookups;
+
+    private Semaphore lookupPermits;
+    private AsyncCache<String, UserRepresentation> users;
+    private AsyncCache<String, String> sshKeys;
+    private AsyncCache<String, String> siteNames;
+
+    @PostConstruct
+    void initCaches() {
+        lookupPermits = new Semaphore(maxConcurrentLookups);
+        users = newCache(userTtlSeconds);
+        sshKeys = newCache(sshKeyTtlSeconds);
+        siteNames = newCache(siteNameTtlSeconds);
+        CaffeineCacheMetrics.monitor(meterRegistry, users.synchronous(), USERS);
+        CaffeineCacheMetrics.monitor(meterRegistry, sshKeys.synchronous(), SSH_KEYS);
+        CaffeineCacheMetrics.monitor(meterRegistry, siteNames.synchronous(), SITE_NAMES);
+    }
+
+    /**
+     * Get several users at once. Cached users are served from memory, the missing ones are
+     * fetched from Keycloak concurrently.
+     * @param userIds The Keycloak user IDs
+     * @return Users keyed by ID (users not found are omitted)
+     */
+    public Map<String, UserRepresentation> getUsers(Collection<String> userIds) {
+        return join(users.getAll(userIds, (missing, executor) ->
+                load(() -> loadConcurrently(missing, id -> timed(USERS, () -> keycloakService.getUserById(id))))));
+    }
+
+    /**
+     * Get SSH keys of several users at once, loading the missing ones with a single query.
+     * @param userIds The Keycloak user IDs
+     * @return SSH keys keyed by user ID (users without a key are omitted)
+     */
+    public Map<String, String> getSshKeys(Collection<String> userIds) {
+        return join(sshKeys.getAll(userIds, (missing, executor) ->
+                load(() -> timed(SSH_KEYS, () -> sshKeyService.getUserSshKeys(new ArrayList<>(missing))))));
+    }
+
+    /**
+     * Get several site names at once. Cached names are served from memory, the missing ones are
+     * fetched from Keycloak concurrently.
+     * @param siteIds The Keycloak group IDs
+     * @return Site names keyed by site ID (sites not found are omitted)
+     */
+    public Map<String, String> getSiteNames(Collection<String> siteIds) {
+        return join(siteNames.getAll(siteIds, (missing, executor) ->
+                load(() -> loadConcurrently(missing, id -> timed(SITE_NAMES, () -> keycloakService.getGroupNameById(id))))));
+    }
+
+    /**
+     * Hit/miss statistics of each cache, keyed by cache name
+     */
+    public Map<String, CacheStats> stats() {
+        Map<String, CacheStats> stats = new LinkedHashMap<>();
+        stats.put(USERS, users.synchronous().stats());
+        stats.put(SSH_KEYS, sshKeys.synchronous().stats());
+        stats.put(SITE_NAMES, siteNames.synchronous().stats());
+        return stats;
+    }
+
+    // The Keycloak admin API has no bulk lookup by ID, so misses are fetched in parallel on virtual threads,
+    // no more at once than the client has connections: a cold cache doesn't flood Keycloak
+    private <V> Map<String, V> loadConcurrently(Set<? extends String> keys, Function<String, Optional<V>> loader) {
+        Map<String, Future<Optional<V>>> pending = new HashMap<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (String key : keys) {
+                pending.put(key, executor.submit(() -> {
+                    lookupPermits.acquire();
+                    try {
+                        return loader.apply(key);
+                    } finally {
+                        lookupPermits.release();
+                    }
+                }));
+            }
+        }
+
+        Map<String, V> loaded = new HashMap<>();
+        pending.forEach((key, future) -> {
+            try {
+                future.get().ifPresent(value -> loaded.put(key, value));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                log.error("Error loading enrichment data for key {}: {}", key, e.getCause().getMessage());
+            }
+        });
+        return loaded;
+    }
+
+    // Latency of the backend call behind a cache miss (one Keycloak request, or one SSH key query)
+    private <V> V timed(String cacheName, Supplier<V> lookup) {
+        return Timer.builder("enrichment.lookup")
+                .description("Latency of enrichment lookups on cache misses")
+                .tag("cache", cacheName)
+                .publishPercentileHistogram()
+                .register(meterRegistry)
+                .record(lookup);
+    }
+
+    // The bulk load runs on the calling thread: the futures of the missing keys are registered before it starts,
+    // so concurrent callers asking for the same keys wait on them instead of loading again
+    private <V> CompletableFuture<Map<String, V>> load(Supplier<Map<String, V>> loader) {
+        try {
+            return CompletableFuture.completedFuture(loader.get());
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private <V> Map<String, V> join(CompletableFuture<Map<String, V>> result) {
+        try {
+            return result.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
+    }
+
+    private <V> AsyncCache<String, V> newCache(long ttlSeconds) {
+        return Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .recordStats()
+                .buildAsync();
+    }
+}
@@ -0,0 +1,37 @@
+package it.polito.cloudresources.eventprocessor.service;
+
+import it.polito.cloudresources.eventprocessor.model.Event;
+import it.polito.cloudresources.eventprocessor.model.WebhookEventType;
+import it.polito.cloudresources.eventprocessor.util.SplicedJsonPayload;
+import org.keycloak.representations.idm.UserRepresentation;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Everything needed to build the payloads of a batch of deliveries, fetched up front in bulk:
+ * events (with resource and type), active events of batch-mode recipients keyed by user,
+ * users, SSH keys and site names, each keyed by ID.
+ * Payload assembly only reads from the snapshot. Single-event payloads are serialized once per event
+ * and shared by all the webhooks notified about it in the batch.
+ */
+public record EnrichmentSnapshot(Map<Long, Event> events,
+                                 Map<String, List<Event>> activeEvents,
+                                 Map<String, UserRepresentation> users,
+                                 Map<String, String> sshKeys,
+                                 Map<String, String> siteNames,
+                                 ConcurrentMap<PayloadKey, SplicedJsonPayload> sharedPayloads) {
+
+    public EnrichmentSnapshot(Map<Long, Event> events,
+                              Map<String, List<Event>> activeEvents,
+                              Map<String, UserRepresentation> users,
+                              Map<String, String> sshKeys,
+                              Map<String, String> siteNames) {
+        this(events, activeEvents, users, sshKeys, siteNames, new ConcurrentHashMap<>());
+    }
+
+    public record PayloadKey(Long eventId, WebhookEventType eventType) {
+    }
+}
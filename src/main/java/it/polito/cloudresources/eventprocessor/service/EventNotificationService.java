@@ -0,0 +1,127 @@
+package it.polito.cloudresources.eventprocessor.service;
+
+import it.polito.cloudresources.eventprocessor.model.Event;
+import it.polito.cloudresources.eventprocessor.model.WebhookEventType;
+import it.polito.cloudresources.eventprocessor.repository.EventRepository;
+import it.polito.cloudresources.eventprocessor.util.DateTimeUtils;
+import jakarta.persistence.EntityManager;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Marks due events as notified and enqueues their webhook deliveries, in one transaction.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class EventNotificationService {
+
+    private final EventRepository eventRepository;
+    private final DateTimeUtils dateTimeUtils;
+    private final WebhookOutboxService webhookOutboxService;
+    private final EntityManager entityManager;
+
+    @Value("${event.processor.scan.chunk-size:500}")
+    private int chunkSize;
+
+    /**
+     * Notify the start or end of the given events.
+     * Events are re-read and locked, and skipped if already notified, locked by another replica, or
+     * if their start/end was moved past the given deadline since they were scheduled (the next refill
+     * schedules them again).
+     *
+     * @param eventType EVENT_START or EVENT_END
+     * @param eventIds The events whose timer fired
+     * @param deadline Latest start/end time that counts as due
+     * @return Number of events notified
+     */
+    @Transactional
+    public int notifyDueEvents(WebhookEventType eventType, Collection<Long> eventIds, ZonedDateTime deadline) {
+        ZonedDateTime now = dateTimeUtils.getCurrentDateTime();
+        List<Long> ids = new ArrayList<>(eventIds);
+        int notified = 0;
+
+        // Process in chunks, flushing and clearing the persistence context in between, so that hundreds
+        // of events due on the same minute never sit in the persistence context at once
+        for (int from = 0; from < ids.size(); from += chunkSize) {
+            List<Long> chunk = ids.subList(from, Math.min(from + chunkSize, ids.size()));
+            notified += notifyChunk(eventType, chunk, deadline, now);
+            entityManager.flush();
+            entityManager.clear();
+        }
+        return notified;
+    }
+
+    /**
+     * Mark the start or end of the given events as notified without enqueuing any delivery.
+     * Used by the catch-up for transitions that are too old to be worth notifying.
+     *
+     * @param eventType EVENT_START or EVENT_END
+     * @param eventIds The stale events
+     * @return Number of events marked
+     */
+    @Transactional
+    public int skipStaleEvents(WebhookEventType eventType, Collection<Long> eventIds) {
+        boolean isStart = eventType == WebhookEventType.EVENT_START;
+        List<Long> claimedIds = (isStart
+                ? eventRepository.claimUnnotifiedStarts(eventIds)
+                : eventRepository.claimUnnotifiedEnds(eventIds)).stream().map(Event::getId).toList();
+        if (claimedIds.isEmpty()) {
+            return 0;
+        }
+        ZonedDateTime now = dateTimeUtils.getCurrentDateTime();
+        int updated = isStart
+                ? eventRepository.markStartNotified(claimedIds, now)
+                : eventRepository.markEndNotified(claimedIds, now);
+        log.warn("Marked {} stale events as {} notified without sending webhooks: {}", updated, eventType, claimedIds);
+        return updated;
+    }
+
+    private int notifyChunk(WebhookEventType eventType, List<Long> eventIds, ZonedDateTime deadline, ZonedDateTime now) {
+        boolean isStart = eventType == WebhookEventType.EVENT_START;
+        List<Event> dueEvents = new ArrayList<>();
+
+        // Only the events this replica manages to lock are processed; the rest belong to another replica
+        List<Event> claimed = isStart
+                ? eventRepository.claimUnnotifiedStarts(eventIds)
+                : eventRepository.claimUnnotifiedEnds(eventIds);
+        for (Event event : claimed) {
+            ZonedDateTime time = isStart ? event.getStart() : event.getEnd();
+            if (time.isAfter(deadline)) {
+                log.debug("Skipping {} for event ID {}: rescheduled", eventType, event.getId());
+                continue;
+            }
+
+            log.info("Processing {} for event ID: {}, Resource: {}, User: {}, Time: {}",
+                    eventType,
+                    event.getId(),
+                    event.getResource().getName(),
+                    event.getKeycloakId(),
+                    dateTimeUtils.formatDateTime(time));
+
+            dueEvents.add(event);
+        }
+        if (dueEvents.isEmpty()) {
+            return 0;
+        }
+
+        // Mark the whole chunk as processed with one set-based UPDATE instead of one save per event
+        List<Long> dueIds = dueEvents.stream().map(Event::getId).toList();
+        int updated = isStart
+                ? eventRepository.markStartNotified(dueIds, now)
+                : eventRepository.markEndNotified(dueIds, now);
+        log.info("Marked {} of {} events as {} notified", updated, dueIds.size(), eventType);
+
+        // Enqueue deliveries in the same transaction as the notified-at stamps
+        webhookOutboxService.enqueue(eventType, dueEvents);
+        return updated;
+    }
+}
@@ -1,19 +1,35 @@
 package it.polito.cloudresources.eventprocessor.service;
 
-import it.polito.cloudresources.eventprocessor.model.Event;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import it.polito.cloudresources.eventprocessor.model.WebhookEventType;
+import it.polito.cloudresources.eventprocessor.model.dto.EventSchedule;
 import it.polito.cloudresources.eventprocessor.repository.EventRepository;
 import it.polito.cloudresources.eventprocessor.util.DateTimeUtils;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.ZonedDateTime;
-import java.time.temporal.ChronoUnit;
+import java.util.Collection;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
+/**
+ * Periodically loads the events starting or ending soon into the event timer, which fires
+ * each notification at its exact time. Starts and ends are found in one scan pass per tick.
+ * Events whose time has already passed (within the grace window) are fired right away, so the scan
+ * is also the safety net for missed timers.
+ * Each instance only schedules the events of the resource partitions assigned to it by the
+ * PartitionAssignmentService; the scan still reads the whole due-time range and filters the rest out.
+ */
 @Service
 @RequiredArgsConstructor
 @Slf4j
@@ -21,65 +37,121 @@ public class EventProcessorService {
 
     private final EventRepository eventRepository;
     private final DateTimeUtils dateTimeUtils;
-    private final WebhookNotifierService webhookNotifierService; // Inject the new service
+    private final EventTimerService eventTimerService;
+    private final PartitionAssignmentService partitionAssignmentService;
+    private final MeterRegistry meterRegistry;
 
-    // Check for events starting soon
+    @Value("${event.processor.lookahead.minutes:5}")
+    private long lookaheadMinutes;
+
+    @Value("${event.processor.grace.minutes:1}")
+    private long graceMinutes;
+
+    @Value("${event.processor.scan.chunk-size:500}")
+    private int chunkSize;
+
+    // Lower bound of the window of the last successful scan, see scannedFrom
+    private volatile ZonedDateTime lastScanFrom;
+
+    /**
+     * Schedule the events starting or ending soon, including those whose start or end passed within the grace window.
+     * Starts and ends are found by a single keyset-paginated query per chunk and both go to the event timer.
+     */
     @Scheduled(fixedRateString = "${event.processor.rate}")
-    @Transactional
-    public void processStartingEvents() {
+    @Transactional(readOnly = true)
+    public void processDueEvents() {
         ZonedDateTime now = dateTimeUtils.ensureTimeZone(ZonedDateTime.now());
-        ZonedDateTime soon = now.plus(5, ChronoUnit.MINUTES); // Define "soon" as 5 minutes from now
-        log.debug("Checking for events starting between {} and {}", now, soon);
-
-        List<Event> startingEvents = eventRepository.findUnprocessedEventsStartingBetween(now, soon);
-        
-        // Process each event individually without grouping by user
-        for (Event event : startingEvents) {
-            log.info("Processing start event ID: {}, Resource: {}, User: {}, Start: {}",
-                    event.getId(),
-                    event.getResource().getName(),
-                    event.getKeycloakId(),
-                    dateTimeUtils.formatDateTime(event.getStart()));
-            
-            // Notify each event individually
-            webhookNotifierService.notify(WebhookEventType.EVENT_START, event);
-            
-            event.setStartNotifiedAt(now); // Mark event as processed
-            log.info("Saving event (start) processed: {}", event);
-            eventRepository.save(event);
+        ZonedDateTime windowStart = now.minusMinutes(graceMinutes);
+        ZonedDateTime soon = now.plusMinutes(lookaheadMinutes);
+        Set<Long> partitions = partitionAssignmentService.ownedPartitions();
+        if (partitions.isEmpty()) {
+            log.debug("No partitions assigned to this node yet, skipping scan of due events");
+            return;
         }
+        long partitionCount = partitionAssignmentService.partitionCount();
+        log.debug("Checking for events starting or ending between {} and {} in {} partitions", windowStart, soon, partitions.size());
+
+        Timer.Sample sample = Timer.start(meterRegistry);
+        Map<WebhookEventType, Integer> scheduled = new EnumMap<>(WebhookEventType.class);
+        Long afterId = -1L;
+        List<EventSchedule> chunk;
+        do {
+            chunk = eventRepository.findUnprocessedEventsInWindow(
+                    windowStart, soon, afterId, partitionCount, partitions, PageRequest.of(0, chunkSize));
+            for (EventSchedule event : chunk) {
+                schedule(event, windowStart, soon, scheduled);
+            }
+            if (!chunk.isEmpty()) {
+                afterId = chunk.get(chunk.size() - 1).id();
+            }
+        } while (chunk.size() == chunkSize);
+        recordScan(sample, scheduled);
+        lastScanFrom = windowStart;
+        log.debug("Scanned {} starting and {} ending events, {} start/end notifications pending in the event timer",
+                scheduled.getOrDefault(WebhookEventType.EVENT_START, 0), scheduled.getOrDefault(WebhookEventType.EVENT_END, 0),
+                eventTimerService.pendingCount());
     }
 
-    // Check for events that have just ended (e.g., ended in the last minute)
-    @Scheduled(fixedRateString = "${event.processor.rate}")
+    /**
+     * Reschedule events that were just created or moved, instead of waiting for the next scan.
+     * Events outside this node's partitions, already notified, or not within the scan window are left to the scan.
+     *
+     * @param eventIds IDs of the changed events
+     * @return Number of start/end notifications scheduled
+     */
     @Transactional(readOnly = true)
-    public void processEndingEvents() {
+    public int scheduleChangedEvents(Collection<Long> eventIds) {
+        Set<Long> partitions = partitionAssignmentService.ownedPartitions();
+        long partitionCount = partitionAssignmentService.partitionCount();
         ZonedDateTime now = dateTimeUtils.ensureTimeZone(ZonedDateTime.now());
-        ZonedDateTime justEndedThreshold = now.minus(1, ChronoUnit.MINUTES); // Define "just ended" as within the last minute
-        log.debug("Checking for events ending between {} and {}", justEndedThreshold, now);
-
-        List<Event> endingEvents = eventRepository.findUnprocessedEventsEndingBetween(justEndedThreshold, now);
-
-        if (!endingEvents.isEmpty()) {
-            log.info("Found {} events ending recently:", endingEvents.size());
-            
-            // Process each event individually without grouping by user
-            for (Event event : endingEvents) {
-                log.info("Processing end event ID: {}, Resource: {}, User: {}, End: {}",
-                        event.getId(),
-                        event.getResource().getName(),
-                        event.getKeycloakId(),
-                        dateTimeUtils.formatDateTime(event.getEnd()));
-
-                // Notify each event individually
-                webhookNotifierService.notify(WebhookEventType.EVENT_END, event);
-                
-                event.setEndNotifiedAt(now); // Mark event as processed
-                log.info("Saving event (end) processed: {}", event);
-                eventRepository.save(event);
+        ZonedDateTime windowStart = now.minusMinutes(graceMinutes);
+        ZonedDateTime soon = now.plusMinutes(lookaheadMinutes);
+
+        Map<WebhookEventType, Integer> scheduled = new EnumMap<>(WebhookEventType.class);
+        for (EventSchedule event : eventRepository.findSchedulesByIdIn(eventIds)) {
+            if (partitions.contains(Math.floorMod(event.resourceId(), partitionCount))) {
+                schedule(event, windowStart, soon, scheduled);
             }
-        } else {
-            log.debug("No events ending recently.");
+        }
+        return scheduled.values().stream().mapToInt(Integer::intValue).sum();
+    }
+
+    /**
+     * Lower bound of the window of the last successful scan.
+     * Events due from then on are covered by the regular scans; anything earlier is left to the catch-up.
+     *
+     * @return The bound, or null until a scan completed once
+     */
+    public ZonedDateTime scannedFrom() {
+        return lastScanFrom;
+    }
+
+    // Hand the unnotified start and/or end of an event within the window to the event timer
+    private void schedule(EventSchedule event, ZonedDateTime windowStart, ZonedDateTime soon, Map<WebhookEventType, Integer> scheduled) {
+        if (event.startNotifiedAt() == null && isWithin(event.start(), windowStart, soon)) {
+            eventTimerService.schedule(event.id(), WebhookEventType.EVENT_START, event.start());
+            scheduled.merge(WebhookEventType.EVENT_START, 1, Integer::sum);
+        }
+        if (event.endNotifiedAt() == null && isWithin(event.end(), windowStart, soon)) {
+            eventTimerService.schedule(event.id(), WebhookEventType.EVENT_END, event.end());
+            scheduled.merge(WebhookEventType.EVENT_END, 1, Integer::sum);
+        }
+    }
+
+    private boolean isWithin(ZonedDateTime time, ZonedDateTime from, ZonedDateTime to) {
+        return !time.isBefore(from) && !time.isAfter(to);
+    }
+
+    private void recordScan(Timer.Sample sample, Map<WebhookEventType, Integer> scheduled) {
+        sample.stop(Timer.builder("event.scan.duration")
+                .description("Duration of a due-event scan")
+                .register(meterRegistry));
+        for (WebhookEventType eventType : List.of(WebhookEventType.EVENT_START, WebhookEventType.EVENT_END)) {
+            DistributionSummary.builder("event.scan.due")
+                    .description("Unnotified starts/ends found per scan")
+                    .tag("type", eventType.name())
+                    .register(meterRegistry)
+                    .record(scheduled.getOrDefault(eventType, 0));
         }
     }
 }
@@ -0,0 +1,175 @@
+package it.polito.cloudresources.eventprocessor.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import it.polito.cloudresources.eventprocessor.model.WebhookEventType;
+import it.polito.cloudresources.eventprocessor.util.DateTimeUtils;
+import it.polito.cloudresources.eventprocessor.util.HierarchicalTimingWheel;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Fires start/end notifications at their exact instant.
+ * The periodic scan loads upcoming events into an in-memory hierarchical timing wheel; a dedicated
+ * thread sleeps until the next bucket is due and hands the expired events to the notification service.
+ * Starts fire start-lead-ms before the event starts, ends end-lead-ms before it ends.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class EventTimerService {
+
+    private final EventNotificationService eventNotificationService;
+    private final DateTimeUtils dateTimeUtils;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${event.processor.timer.tick-ms:100}")
+    private long tickMillis;
+
+    @Value("${event.processor.timer.wheel-size:512}")
+    private int wheelSize;
+
+    @Value("${event.processor.timer.start-lead-ms:5000}")
+    private long startLeadMillis;
+
+    @Value("${event.processor.timer.end-lead-ms:0}")
+    private long endLeadMillis;
+
+    // Deadline each event transition is currently scheduled for, to skip duplicates and detect stale timers
+    private final Map<TimerKey, Long> deadlines = new ConcurrentHashMap<>();
+    private final Queue<TimerKey> dueNow = new ConcurrentLinkedQueue<>();
+
+    private HierarchicalTimingWheel<TimerKey> wheel;
+    private Thread timerThread;
+    private volatile boolean running;
+
+    @PostConstruct
+    void start() {
+        wheel = new HierarchicalTimingWheel<>(tickMillis, wheelSize, System.currentTimeMillis());
+        running = true;
+        Gauge.builder("event.timer.pending", deadlines, Map::size)
+                .description("Start/end notifications waiting in the event timer")
+                .register(meterRegistry);
+        timerThread = Thread.ofPlatform().name("event-timer").daemon().start(this::run);
+    }
+
+    @PreDestroy
+    void stop() {
+        running = false;
+        timerThread.interrupt();
+    }
+
+    /**
+     * Schedule the start or end notification of an event. Re-scheduling an event at the same
+     * time is a no-op; at a different time (the event was moved) the old timer becomes stale.
+     *
+     * @param eventId The event ID
+     * @param eventType EVENT_START or EVENT_END
+     * @param time The event's start or end time
+     */
+    public void schedule(Long eventId, WebhookEventType eventType, ZonedDateTime time) {
+        TimerKey key = new TimerKey(eventId, eventType);
+        long lead = eventType == WebhookEventType.EVENT_START ? startLeadMillis : endLeadMillis;
+        long deadline = time.toInstant().toEpochMilli() - lead;
+
+        Long previous = deadlines.put(key, deadline);
+        if (previous != null && previous == deadline) {
+            return;
+        }
+        if (!wheel.schedule(key, deadline)) {
+            dueNow.add(key);
+        }
+        log.debug("Scheduled {} for event ID {} at {}", eventType, eventId, Instant.ofEpochMilli(deadline));
+    }
+
+    /**
+     * Number of event transitions waiting to fire
+     */
+    public int pendingCount() {
+        return deadlines.size();
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                List<TimerKey> expired = new ArrayList<>(wheel.poll(tickMillis));
+                TimerKey key;
+                while ((key = dueNow.poll()) != null) {
+                    expired.add(key);
+                }
+                if (!expired.isEmpty()) {
+                    fire(expired);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("Error firing event timers: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    private void fire(List<TimerKey> expired) {
+        long now = System.currentTimeMillis();
+        // A timer is stale if the event was rescheduled to a later deadline in the meantime
+        Map<TimerKey, Long> due = new HashMap<>();
+        for (TimerKey key : expired) {
+            Long deadline = deadlines.get(key);
+            if (deadline != null && deadline <= now + tickMillis && deadlines.remove(key, deadline)) {
+                due.put(key, deadline);
+            }
+        }
+
+        Map<WebhookEventType, List<Long>> byType = due.keySet().stream().collect(Collectors.groupingBy(
+                TimerKey::eventType, Collectors.mapping(TimerKey::eventId, Collectors.toList())));
+
+        byType.forEach((eventType, eventIds) -> {
+            long lead = eventType == WebhookEventType.EVENT_START ? startLeadMillis : endLeadMillis;
+            ZonedDateTime deadline = dateTimeUtils.ensureTimeZone(
+                    Instant.ofEpochMilli(now + lead + tickMillis).atZone(DateTimeUtils.DEFAULT_ZONE_ID));
+            try {
+                int notified = eventNotificationService.notifyDueEvents(eventType, eventIds, deadline);
+                recordLag(eventType, due);
+                log.debug("Timer fired {} for {} events, {} notified", eventType, eventIds.size(), notified);
+            } catch (Exception e) {
+                // Not rescheduled here: the events are still unnotified, so the next refill picks them up again
+                log.error("Error notifying {} for events {}: {}", eventType, eventIds, e.getMessage(), e);
+            }
+        });
+    }
+
+    // Schedule lag: when the notification was committed minus when it was due (event time minus lead)
+    private void recordLag(WebhookEventType eventType, Map<TimerKey, Long> due) {
+        Timer lag = Timer.builder("event.notify.lag")
+                .description("Delay between the time a start/end notification was due and the time it was committed")
+                .tag("type", eventType.name())
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        long committedAt = System.currentTimeMillis();
+        due.forEach((key, deadline) -> {
+            if (key.eventType() == eventType) {
+                lag.record(Math.max(0, committedAt - deadline), TimeUnit.MILLISECONDS);
+            }
+        });
+    }
+
+    private record TimerKey(Long eventId, WebhookEventType eventType) {
+    }
+}
@@ -3,15 +3,11 @@ package it.polito.cloudresources.eventprocessor.service;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
-import org.keycloak.OAuth2Constants;
 import org.keycloak.admin.client.Keycloak;
-import org.keycloak.admin.client.KeycloakBuilder;
-import org.keycloak.admin.client.resource.GroupResource;
 import org.keycloak.admin.client.resource.RealmResource;
-import org.keycloak.admin.client.resource.UserResource;
-import org.keycloak.representations.idm.GroupRepresentation;
 import org.keycloak.representations.idm.UserRepresentation;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import java.util.Optional;
@@ -26,37 +22,29 @@ public class KeycloakService {
 
     public static final String ATTR_SSH_KEY = "ssh_key";
 
-    @Value("${keycloak.auth-server-url}")
-    private String authServerUrl;
+    private final Keycloak keycloakAdminClient;
 
     @Value("${keycloak.realm}")
     private String realm;
 
-    @Value("${keycloak.resource}")
-    private String clientId;
-
-    // Admin credentials
-    @Value("${keycloak.admin.username:admin}")
-    private String adminUsername;
-
-    @Value("${keycloak.admin.password:admin}")
-    private String adminPassword;
-
-    @Value("${keycloak.credentials.secret}")
-    private String clientSecret;
-
-
     /**
-     * Creates an admin Keycloak client
+     * Returns the shared admin Keycloak client
      */
     protected Keycloak getKeycloakClient() {
-        return KeycloakBuilder.builder()
-                .serverUrl(authServerUrl)
-                .realm(realm)
-                .clientId(clientId)
-                .clientSecret(clientSecret)
-                .grantType(OAuth2Constants.CLIENT_CREDENTIALS)
-                .build();
+        return keycloakAdminClient;
+    }
+
+    /**
+     * Refresh the service-account token ahead of expiry, so lookups never wait on a token grant.
+     * The TokenManager only contacts Keycloak when the cached token is close to expiring.
+     */
+    @Scheduled(fixedDelayString = "${keycloak.client.token-refresh-interval:30000}")
+    public void refreshAccessToken() {
+        try {
+            getKeycloakClient().tokenManager().getAccessToken();
+        } catch (Exception e) {
+            log.warn("Error refreshing Keycloak service-account token: {}", e.getMessage());
+        }
     }
 
     /**
@@ -0,0 +1,143 @@
+package it.polito.cloudresources.eventprocessor.service;
+
+import it.polito.cloudresources.eventprocessor.model.ProcessorNode;
+import it.polito.cloudresources.eventprocessor.repository.ProcessorNodeRepository;
+import it.polito.cloudresources.eventprocessor.util.ConsistentHashRing;
+import it.polito.cloudresources.eventprocessor.util.DateTimeUtils;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+/**
+ * Assigns resource partitions to the running processor instances.
+ * Events belong to partition {@code resource_id mod partition-count}; partitions are spread over the live
+ * instances (tracked through heartbeats in the processor_nodes table) with a consistent-hash ring, so a join
+ * or leave moves only a share of them. Ownership splits the notifications, row locks and outbox writes between
+ * the instances, not the scans: the partition is a filter on the due-time index range, which every instance reads.
+ * Row claiming with SKIP LOCKED stays in place, so the brief overlap while instances converge on a new
+ * assignment never notifies an event twice.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class PartitionAssignmentService {
+
+    private final ProcessorNodeRepository processorNodeRepository;
+    private final DateTimeUtils dateTimeUtils;
+
+    @Value("${event.processor.cluster.node-id:${HOSTNAME:}}")
+    private String configuredNodeId;
+
+    @Value("${event.processor.cluster.partitions:64}")
+    private int partitionCount;
+
+    @Value("${event.processor.cluster.virtual-nodes:100}")
+    private int virtualNodes;
+
+    @Value("${event.processor.cluster.node-timeout-ms:30000}")
+    private long nodeTimeoutMillis;
+
+    private String nodeId;
+    private ZonedDateTime startedAt;
+    private volatile List<String> liveNodes = List.of();
+    private volatile Set<Long> ownedPartitions = Set.of();
+
+    @PostConstruct
+    void init() {
+        nodeId = configuredNodeId == null || configuredNodeId.isBlank() ? UUID.randomUUID().toString() : configuredNodeId;
+        startedAt = dateTimeUtils.getCurrentDateTime();
+        log.info("Processor node ID: {}, {} partitions", nodeId, partitionCount);
+    }
+
+    @PreDestroy
+    void deregister() {
+        try {
+            processorNodeRepository.deleteById(nodeId);
+            log.info("Processor node {} deregistered", nodeId);
+        } catch (Exception e) {
+            // The other instances take over once the heartbeat times out
+            log.warn("Could not deregister processor node {}: {}", nodeId, e.getMessage());
+        }
+    }
+
+    /**
+     * Refresh this instance's heartbeat, drop instances that timed out and recompute the partition assignment.
+     */
+    @Scheduled(fixedDelayString = "${event.processor.cluster.heartbeat-interval:10000}")
+    @Transactional
+    public void heartbeat() {
+        ZonedDateTime now = dateTimeUtils.getCurrentDateTime();
+        if (processorNodeRepository.touch(nodeId, now) == 0) {
+            processorNodeRepository.save(ProcessorNode.builder()
+                    .nodeId(nodeId)
+                    .startedAt(startedAt)
+                    .lastHeartbeat(now)
+                    .build());
+        }
+
+        ZonedDateTime aliveSince = now.minus(Duration.ofMillis(nodeTimeoutMillis));
+        int removed = processorNodeRepository.deleteByLastHeartbeatBefore(aliveSince);
+        if (removed > 0) {
+            log.info("Removed {} processor nodes that stopped sending heartbeats", removed);
+        }
+
+        List<String> nodes = processorNodeRepository.findLiveNodeIds(aliveSince);
+        if (!nodes.contains(nodeId)) {
+            // Our own row was just written, it is only missing if the clocks of the nodes disagree
+            nodes = new ArrayList<>(nodes);
+            nodes.add(nodeId);
+            nodes.sort(null);
+        }
+        if (!nodes.equals(liveNodes)) {
+            rebalance(nodes);
+        }
+    }
+
+    /**
+     * Partitions currently owned by this instance, empty until the first heartbeat
+     */
+    public Set<Long> ownedPartitions() {
+        return ownedPartitions;
+    }
+
+    /**
+     * ID of this instance in the processor_nodes table
+     */
+    public String nodeId() {
+        return nodeId;
+    }
+
+    /**
+     * Total number of partitions
+     */
+    public int partitionCount() {
+        return partitionCount;
+    }
+
+    private void rebalance(List<String> nodes) {
+        ConsistentHashRing ring = new ConsistentHashRing(nodes, virtualNodes);
+        Set<Long> owned = LongStream.range(0, partitionCount)
+                .filter(partition -> nodeId.equals(ring.nodeFor("partition-" + partition)))
+                .boxed()
+                .collect(Collectors.toUnmodifiableSet());
+
+        log.info("Processor nodes changed to {}: this node now owns {} of {} partitions",
+                nodes, owned.size(), partitionCount);
+        liveNodes = List.copyOf(nodes);
+        ownedPartitions = owned;
+    }
+}
@@ -0,0 +1,138 @@
+package it.polito.cloudresources.eventprocessor.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Change feed from PostgreSQL LISTEN/NOTIFY.
+ * Triggers on events and webhook_configs (db/migration/postgresql/V5__change_feed_triggers.sql) publish the ID
+ * of every created or moved event and a signal for every webhook configuration change; the listener reschedules
+ * the events in the event timer and reloads the routing index right away. The periodic scans stay in place as the
+ * safety net for notifications lost while the listener was disconnected.
+ * The listener opens its own connection with the datasource settings instead of borrowing one from the pool,
+ * so the LISTEN registrations never leak into a pooled session and the pool keeps its full size.
+ */
+@Service
+@Profile("postgres")
+@RequiredArgsConstructor
+@Slf4j
+public class PostgresChangeFeedListener {
+
+    public static final String EVENTS_CHANNEL = "event_changes";
+    public static final String WEBHOOK_CONFIGS_CHANNEL = "webhook_config_changes";
+
+    private final DataSourceProperties dataSourceProperties;
+    private final EventProcessorService eventProcessorService;
+    private final WebhookRoutingIndex webhookRoutingIndex;
+
+    @Value("${event.processor.change-feed.enabled:true}")
+    private boolean enabled;
+
+    @Value("${event.processor.change-feed.poll-timeout-ms:1000}")
+    private int pollTimeoutMillis;
+
+    @Value("${event.processor.change-feed.reconnect-delay-ms:5000}")
+    private long reconnectDelayMillis;
+
+    private Thread listenerThread;
+    private volatile boolean running;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            log.info("PostgreSQL change feed disabled, relying on the periodic scans only");
+            return;
+        }
+        running = true;
+        listenerThread = Thread.ofPlatform().name("pg-change-feed").daemon().start(this::run);
+    }
+
+    @PreDestroy
+    void stop() {
+        running = false;
+        if (listenerThread != null) {
+            listenerThread.interrupt();
+        }
+    }
+
+    private void run() {
+        while (running) {
+            try (Connection connection = DriverManager.getConnection(dataSourceProperties.determineUrl(),
+                    dataSourceProperties.determineUsername(), dataSourceProperties.determinePassword())) {
+                connection.setAutoCommit(true);
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + EVENTS_CHANNEL);
+                    statement.execute("LISTEN " + WEBHOOK_CONFIGS_CHANNEL);
+                }
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                log.info("Listening for PostgreSQL change notifications on {} and {}", EVENTS_CHANNEL, WEBHOOK_CONFIGS_CHANNEL);
+                // Webhook changes made while disconnected would otherwise wait for the next periodic refresh
+                webhookRoutingIndex.refresh();
+
+                while (running) {
+                    PGNotification[] notifications = pgConnection.getNotifications(pollTimeoutMillis);
+                    if (notifications != null && notifications.length > 0) {
+                        handle(notifications);
+                    }
+                }
+            } catch (Exception e) {
+                if (!running) {
+                    return;
+                }
+                log.warn("PostgreSQL change feed disconnected, reconnecting in {} ms: {}", reconnectDelayMillis, e.getMessage());
+                try {
+                    Thread.sleep(reconnectDelayMillis);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void handle(PGNotification[] notifications) {
+        Set<Long> eventIds = new LinkedHashSet<>();
+        boolean webhooksChanged = false;
+        for (PGNotification notification : notifications) {
+            String channel = notification.getName();
+            if (WEBHOOK_CONFIGS_CHANNEL.equals(channel)) {
+                webhooksChanged = true;
+            } else if (EVENTS_CHANNEL.equals(channel)) {
+                String parameter = notification.getParameter();
+                try {
+                    eventIds.add(Long.valueOf(parameter.trim()));
+                } catch (NumberFormatException e) {
+                    log.warn("Ignoring change notification with invalid event ID '{}'", parameter);
+                }
+            }
+        }
+
+        if (webhooksChanged) {
+            webhookRoutingIndex.refresh();
+        }
+        if (!eventIds.isEmpty()) {
+            try {
+                int scheduled = eventProcessorService.scheduleChangedEvents(eventIds);
+                log.debug("Change feed: {} events changed, {} start/end notifications scheduled", eventIds.size(), scheduled);
+            } catch (Exception e) {
+                // The next scan picks the events up
+                log.error("Error rescheduling changed events {}: {}", eventIds, e.getMessage(), e);
+            }
+        }
+    }
+}
@@ -8,7 +8,10 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Collectors;
 
 /**
  * Service for managing SSH keys in the database
@@ -30,5 +33,19 @@ public class SshKeyService {
         return sshKeyRepository.findByUserId(userId)
                 .map(SshKey::getSshKey);
     }
+
+    /**
+     * Get SSH keys of several users with a single query
+     *
+     * @param userIds The Keycloak user IDs
+     * @return SSH keys keyed by user ID (users without a key are omitted)
+     */
+    public Map<String, String> getUserSshKeys(Collection<String> userIds) {
+        if (userIds.isEmpty()) {
+            return Map.of();
+        }
+        return sshKeyRepository.findByUserIdIn(userIds).stream()
+                .collect(Collectors.toMap(SshKey::getUserId, SshKey::getSshKey, (first, second) -> first));
+    }
     
 }
@@ -0,0 +1,391 @@
+package it.polito.cloudresources.eventprocessor.service;
+
+import it.polito.cloudresources.eventprocessor.exception.WebhookDeliveryException;
+import it.polito.cloudresources.eventprocessor.model.WebhookDelivery;
+import it.polito.cloudresources.eventprocessor.model.dto.DueDelivery;
+import it.polito.cloudresources.eventprocessor.util.CircuitBreaker;
+import it.polito.cloudresources.eventprocessor.util.DateTimeUtils;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Drains the webhook delivery outbox through a staged pipeline:
+ * claim (the scheduled poll, with admission) → enrich (bulk prefetch, per batch) → sign (payload serialization
+ * and signature, per delivery) → deliver (one virtual thread per call, up to max-concurrency).
+ * Stages are connected by bounded queues and each has its own workers, so a slow stage only fills the queue
+ * in front of it. Once the queues are full, nothing more is claimed: the deliveries stay in the outbox,
+ * where other replicas can take them. On shutdown, claiming stops and the claimed deliveries are drained
+ * for up to shutdown-timeout-seconds; whatever is left goes back to the outbox without counting an attempt.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class WebhookDispatcherService {
+
+    private final WebhookOutboxService webhookOutboxService;
+    private final WebhookNotifierService webhookNotifierService;
+    private final SimpleAsyncTaskExecutor webhookDispatchExecutor;
+    private final MeterRegistry meterRegistry;
+    private final WebhookIsolationService webhookIsolationService;
+    private final DateTimeUtils dateTimeUtils;
+
+    @Value("${webhook.delivery.batch-size:500}")
+    private int batchSize;
+
+    @Value("${webhook.delivery.shutdown-timeout-seconds:30}")
+    private long shutdownTimeoutSeconds;
+
+    @Value("${webhook.pipeline.enrich-queue-capacity:4}")
+    private int enrichQueueCapacity;
+
+    @Value("${webhook.pipeline.enrich-workers:2}")
+    private int enrichWorkers;
+
+    @Value("${webhook.pipeline.sign-queue-capacity:500}")
+    private int signQueueCapacity;
+
+    @Value("${webhook.pipeline.sign-workers:2}")
+    private int signWorkers;
+
+    @Value("${webhook.pipeline.deliver-queue-capacity:500}")
+    private int deliverQueueCapacity;
+
+    @Value("${webhook.pipeline.min-lease-remaining-seconds:30}")
+    private long minLeaseRemainingSeconds;
+
+    private volatile boolean shuttingDown = false;
+    private final AtomicInteger inFlightCount = new AtomicInteger();
+    // Claimed deliveries whose outcome is not recorded yet, wherever they are in the pipeline
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final List<Thread> workers = new ArrayList<>();
+
+    // Batches claimed or being claimed, within the capacity of the enrich queue
+    private Semaphore claimSlots;
+    private BlockingQueue<List<ClaimedDelivery>> enrichQueue;
+    private BlockingQueue<SignTask> signQueue;
+    private BlockingQueue<DeliverTask> deliverQueue;
+    private Counter saturatedCounter;
+
+    @PostConstruct
+    void start() {
+        claimSlots = new Semaphore(enrichQueueCapacity);
+        enrichQueue = new ArrayBlockingQueue<>(enrichQueueCapacity);
+        signQueue = new ArrayBlockingQueue<>(signQueueCapacity);
+        deliverQueue = new ArrayBlockingQueue<>(deliverQueueCapacity);
+
+        Gauge.builder("webhook.dispatch.in.flight", inFlightCount, AtomicInteger::get)
+                .description("Webhook deliveries submitted to the dispatch executor and not yet completed")
+                .register(meterRegistry);
+        Gauge.builder("webhook.pipeline.pending", pendingCount, AtomicInteger::get)
+                .description("Claimed webhook deliveries not yet completed, queued or in flight")
+                .register(meterRegistry);
+        registerQueueGauge("enrich", enrichQueue, queue -> queue.stream().mapToInt(List::size).sum());
+        registerQueueGauge("sign", signQueue, BlockingQueue::size);
+        registerQueueGauge("deliver", deliverQueue, BlockingQueue::size);
+        saturatedCounter = Counter.builder("webhook.pipeline.saturated")
+                .description("Polls that stopped claiming because the delivery pipeline was full")
+                .register(meterRegistry);
+
+        for (int i = 0; i < enrichWorkers; i++) {
+            startWorker("webhook-enrich-" + i, enrichQueue, this::enrich);
+        }
+        for (int i = 0; i < signWorkers; i++) {
+            startWorker("webhook-sign-" + i, signQueue, this::sign);
+        }
+        // Submission blocks once the concurrency limit of the executor is reached, which fills the deliver queue
+        startWorker("webhook-deliver", deliverQueue, this::submit);
+    }
+
+    /**
+     * Claim stage: claim due deliveries as long as the pipeline has room for them.
+     * Each delivery is admitted through its webhook's circuit breaker and bulkhead before it is claimed;
+     * deliveries that are not admitted stay pending in the outbox, untouched.
+     */
+    @Scheduled(fixedDelayString = "${webhook.delivery.poll-interval:5000}")
+    public void dispatchDueDeliveries() {
+        int found;
+        do {
+            if (shuttingDown) {
+                log.info("Shutdown in progress, not claiming further webhook deliveries");
+                return;
+            }
+            // Backpressure: a batch is claimed only once the enrich queue can take it, so claimed deliveries
+            // never wait long in memory while their lease runs. The scheduler thread never waits for room.
+            if (!claimSlots.tryAcquire()) {
+                log.debug("Webhook delivery pipeline is full, not claiming until the next poll");
+                saturatedCounter.increment();
+                return;
+            }
+            List<DueDelivery> due;
+            List<ClaimedDelivery> batch;
+            try {
+                due = webhookOutboxService.findDueDeliveries(batchSize, webhookIsolationService.unavailableWebhooks());
+                batch = claim(due);
+            } catch (RuntimeException e) {
+                claimSlots.release();
+                throw e;
+            }
+            found = due.size();
+            if (batch.isEmpty()) {
+                claimSlots.release();
+                // Either nothing is due, or every due delivery is waiting for its webhook
+                return;
+            }
+            log.debug("Dispatching {} webhook deliveries", batch.size());
+            pendingCount.addAndGet(batch.size());
+            enrichQueue.add(batch);
+        } while (found == batchSize);
+    }
+
+    // Admit the due deliveries, then claim the admitted ones; permits of deliveries claimed meanwhile by another replica are released
+    private List<ClaimedDelivery> claim(List<DueDelivery> due) {
+        Map<Long, WebhookIsolationService.Permit> permits = new HashMap<>();
+        for (DueDelivery delivery : due) {
+            WebhookIsolationService.Permit permit = webhookIsolationService.tryAcquire(delivery.webhookId());
+            if (permit != null) {
+                permits.put(delivery.id(), permit);
+            }
+        }
+        List<ClaimedDelivery> claimed = new ArrayList<>(permits.size());
+        try {
+            for (WebhookDelivery delivery : webhookOutboxService.claim(permits.keySet())) {
+                claimed.add(new ClaimedDelivery(delivery, permits.remove(delivery.getId())));
+            }
+        } finally {
+            permits.values().forEach(permit -> webhookIsolationService.release(permit, CircuitBreaker.Outcome.IGNORED, 0));
+        }
+        if (claimed.size() < due.size()) {
+            log.debug("{} due webhook deliveries not admitted or claimed elsewhere, left in the outbox", due.size() - claimed.size());
+        }
+        return claimed;
+    }
+
+    /**
+     * Stop claiming and let the pipeline drain, for up to shutdown-timeout-seconds.
+     * Runs before any bean is destroyed, so the stages can still record outcomes.
+     */
+    @EventListener(ContextClosedEvent.class)
+    public void onShutdown() {
+        if (shuttingDown) {
+            return;
+        }
+        shuttingDown = true;
+        log.info("Draining {} claimed webhook deliveries", pendingCount.get());
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(shutdownTimeoutSeconds);
+        try {
+            while (pendingCount.get() > 0 && System.nanoTime() < deadline) {
+                TimeUnit.MILLISECONDS.sleep(100);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        // Workers blocked on a full queue or on the executor hand their delivery back when interrupted
+        workers.forEach(Thread::interrupt);
+        for (Thread worker : workers) {
+            try {
+                worker.join(TimeUnit.SECONDS.toMillis(1));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        // Whatever did not reach a receiver goes back to the outbox, for the other replicas to deliver
+        List<List<ClaimedDelivery>> batches = new ArrayList<>();
+        enrichQueue.drainTo(batches);
+        batches.forEach(batch -> giveBack(batch.stream().map(ClaimedDelivery::delivery).toList(),
+                batch.stream().map(ClaimedDelivery::permit).toList()));
+        List<SignTask> signTasks = new ArrayList<>();
+        signQueue.drainTo(signTasks);
+        giveBack(signTasks.stream().map(SignTask::delivery).toList(), signTasks.stream().map(SignTask::permit).toList());
+        List<DeliverTask> deliverTasks = new ArrayList<>();
+        deliverQueue.drainTo(deliverTasks);
+        giveBack(deliverTasks.stream().map(DeliverTask::delivery).toList(), deliverTasks.stream().map(DeliverTask::permit).toList());
+
+        if (pendingCount.get() > inFlightCount.get()) {
+            log.warn("{} webhook deliveries could not be returned to the outbox, they are claimed again once their lease expires",
+                    pendingCount.get() - inFlightCount.get());
+        }
+        log.info("Webhook delivery pipeline stopped, {} deliveries still in flight", inFlightCount.get());
+    }
+
+    /**
+     * Enrich stage: prefetch the enrichment data of a batch of admitted deliveries.
+     */
+    private void enrich(List<ClaimedDelivery> batch) {
+        claimSlots.release();
+        List<WebhookDelivery> deliveries = batch.stream().map(ClaimedDelivery::delivery).toList();
+        EnrichmentSnapshot snapshot;
+        try {
+            snapshot = webhookNotifierService.prefetch(deliveries);
+        } catch (Exception e) {
+            log.error("Error prefetching enrichment data for {} webhook deliveries: {}", batch.size(), e.getMessage(), e);
+            // The receivers were not called, so the breakers record nothing
+            for (ClaimedDelivery claimed : batch) {
+                webhookOutboxService.recordFailure(claimed.delivery().getId(), null, e.getMessage(), true);
+                webhookIsolationService.release(claimed.permit(), CircuitBreaker.Outcome.IGNORED, 0);
+            }
+            pendingCount.addAndGet(-batch.size());
+            return;
+        }
+
+        for (int i = 0; i < batch.size(); i++) {
+            ClaimedDelivery claimed = batch.get(i);
+            try {
+                signQueue.put(new SignTask(claimed.delivery(), claimed.permit(), snapshot));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                List<ClaimedDelivery> rest = batch.subList(i, batch.size());
+                giveBack(rest.stream().map(ClaimedDelivery::delivery).toList(), rest.stream().map(ClaimedDelivery::permit).toList());
+                break;
+            }
+        }
+    }
+
+    /**
+     * Sign stage: serialize and sign the payload of an admitted delivery.
+     */
+    private void sign(SignTask task) {
+        WebhookDelivery delivery = task.delivery();
+        WebhookNotifierService.PreparedCall call;
+        try {
+            call = webhookNotifierService.prepare(delivery, task.snapshot());
+        } catch (Exception e) {
+            // The receiver was not called, so the breaker records nothing
+            if (e instanceof WebhookDeliveryException deliveryException) {
+                webhookOutboxService.recordFailure(delivery.getId(), deliveryException.getStatusCode(), e.getMessage(), deliveryException.isRetryable());
+            } else {
+                log.error("Unexpected error preparing webhook delivery {}: {}", delivery.getId(), e.getMessage(), e);
+                webhookOutboxService.recordFailure(delivery.getId(), null, e.getMessage(), true);
+            }
+            webhookIsolationService.release(task.permit(), CircuitBreaker.Outcome.IGNORED, 0);
+            pendingCount.decrementAndGet();
+            return;
+        }
+        try {
+            deliverQueue.put(new DeliverTask(delivery, task.permit(), call));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            giveBack(List.of(delivery), List.of(task.permit()));
+        }
+    }
+
+    /**
+     * Deliver stage: hand a signed call to its own virtual thread, waiting for a free slot.
+     */
+    private void submit(DeliverTask task) {
+        WebhookDelivery delivery = task.delivery();
+        // Sending after the lease expired could deliver twice, as the delivery may already be claimed again
+        ZonedDateTime leaseExpiresAt = delivery.getLeaseExpiresAt();
+        if (leaseExpiresAt != null && leaseExpiresAt.isBefore(dateTimeUtils.getCurrentDateTime().plusSeconds(minLeaseRemainingSeconds))) {
+            log.warn("Lease of webhook delivery {} expires at {}, returning it to the outbox instead of sending it",
+                    delivery.getId(), leaseExpiresAt);
+            giveBack(List.of(delivery), List.of(task.permit()));
+            return;
+        }
+        inFlightCount.incrementAndGet();
+        try {
+            webhookDispatchExecutor.execute(() -> attempt(task));
+        } catch (Exception e) {
+            // Interrupted while waiting for a free slot, or the executor is closed
+            inFlightCount.decrementAndGet();
+            giveBack(List.of(delivery), List.of(task.permit()));
+        }
+    }
+
+    private void attempt(DeliverTask task) {
+        WebhookDelivery delivery = task.delivery();
+        long startedAt = System.nanoTime();
+        CircuitBreaker.Outcome outcome = CircuitBreaker.Outcome.IGNORED;
+        try {
+            int statusCode = webhookNotifierService.send(task.call());
+            outcome = CircuitBreaker.Outcome.SUCCESS;
+            webhookOutboxService.recordSuccess(delivery.getId(), statusCode);
+        } catch (WebhookDeliveryException e) {
+            if (e.isThrottled()) {
+                // Rate limited: throttling isn't a receiver failure, it only counts as an attempt past max-deferrals
+                webhookOutboxService.recordThrottled(delivery.getId(), e.getStatusCode(), e.getMessage(), e.getRetryAfterMillis());
+                return;
+            }
+            // Retryable errors are the receiver's (5xx, timeouts); other 4xx mean it is up
+            outcome = e.isRetryable() ? CircuitBreaker.Outcome.FAILURE : CircuitBreaker.Outcome.SUCCESS;
+            webhookOutboxService.recordFailure(delivery.getId(), e.getStatusCode(), e.getMessage(), e.isRetryable());
+        } catch (Exception e) {
+            log.error("Unexpected error delivering webhook delivery {}: {}", delivery.getId(), e.getMessage(), e);
+            webhookOutboxService.recordFailure(delivery.getId(), null, e.getMessage(), true);
+        } finally {
+            webhookIsolationService.release(task.permit(), outcome,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt));
+            inFlightCount.decrementAndGet();
+            pendingCount.decrementAndGet();
+        }
+    }
+
+    // Claimed deliveries that won't be attempted here: back to the outbox right away, without counting an attempt
+    private void giveBack(List<WebhookDelivery> deliveries, List<WebhookIsolationService.Permit> permits) {
+        permits.forEach(permit -> webhookIsolationService.release(permit, CircuitBreaker.Outcome.IGNORED, 0));
+        if (deliveries.isEmpty()) {
+            return;
+        }
+        List<Long> deliveryIds = deliveries.stream().map(WebhookDelivery::getId).toList();
+        try {
+            webhookOutboxService.defer(deliveryIds, 0);
+        } catch (Exception e) {
+            // The leases expire and the deliveries are claimed again
+            log.error("Error returning webhook deliveries {} to the outbox: {}", deliveryIds, e.getMessage(), e);
+        }
+        pendingCount.addAndGet(-deliveries.size());
+    }
+
+    private <T> void startWorker(String name, BlockingQueue<T> queue, Consumer<T> stage) {
+        workers.add(Thread.ofPlatform().name(name).daemon().start(() -> {
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    stage.accept(queue.take());
+                }
+            } catch (InterruptedException e) {
+                // Stopped at shutdown, what is still queued is returned to the outbox
+            }
+        }));
+    }
+
+    private <T> void registerQueueGauge(String stage, BlockingQueue<T> queue, ToDoubleFunction<BlockingQueue<T>> size) {
+        Gauge.builder("webhook.pipeline.queued", queue, size)
+                .description("Webhook deliveries waiting in front of a pipeline stage")
+                .tag("stage", stage)
+                .register(meterRegistry);
+    }
+
+    private record ClaimedDelivery(WebhookDelivery delivery, WebhookIsolationService.Permit permit) {
+    }
+
+    private record SignTask(WebhookDelivery delivery, WebhookIsolationService.Permit permit, EnrichmentSnapshot snapshot) {
+    }
+
+    private record DeliverTask(WebhookDelivery delivery, WebhookIsolationService.Permit permit, WebhookNotifierService.PreparedCall call) {
+    }
+}
@@ -0,0 +1,121 @@
+package it.polito.cloudresources.eventprocessor.service;
+
+import it.polito.cloudresources.eventprocessor.util.CircuitBreaker;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Per-webhook isolation of deliveries: a circuit breaker that stops calling a receiver that keeps failing
+ * or answering slowly, and a bulkhead that caps the deliveries in flight to a single webhook.
+ * A degraded receiver can therefore only hold its own share of the dispatcher's concurrency. Admission
+ * happens before deliveries are claimed, so deliveries that are not admitted simply stay in the outbox.
+ */
+@Service
+@Slf4j
+public class WebhookIsolationService {
+
+    @Value("${webhook.circuit-breaker.window-size:20}")
+    private int windowSize;
+
+    @Value("${webhook.circuit-breaker.minimum-calls:10}")
+    private int minimumCalls;
+
+    @Value("${webhook.circuit-breaker.failure-rate-threshold:50}")
+    private int failureRateThreshold;
+
+    @Value("${webhook.circuit-breaker.slow-call-ms:5000}")
+    private long slowCallMillis;
+
+    @Value("${webhook.circuit-breaker.slow-call-rate-threshold:80}")
+    private int slowCallRateThreshold;
+
+    @Value("${webhook.circuit-breaker.open-ms:30000}")
+    private long openMillis;
+
+    @Value("${webhook.circuit-breaker.half-open-probes:3}")
+    private int halfOpenProbes;
+
+    @Value("${webhook.bulkhead.max-concurrent-calls:32}")
+    private int maxConcurrentCalls;
+
+    private final Map<Long, Isolation> isolations = new ConcurrentHashMap<>();
+
+    /**
+     * Try to admit a delivery to a webhook. An admitted delivery must be followed by {@link #release}.
+     *
+     * @param webhookId The webhook ID
+     * @return The permit of the delivery, or null if it may not be attempted now
+     */
+    public Permit tryAcquire(Long webhookId) {
+        Isolation isolation = isolation(webhookId);
+        if (!isolation.bulkhead.tryAcquire()) {
+            return null;
+        }
+        long breakerPermit = isolation.breaker.tryAcquire(System.currentTimeMillis());
+        if (breakerPermit == CircuitBreaker.REJECTED) {
+            isolation.bulkhead.release();
+            return null;
+        }
+        return new Permit(webhookId, breakerPermit);
+    }
+
+    /**
+     * Release an admitted delivery and record its outcome.
+     *
+     * @param permit The permit returned by {@link #tryAcquire}
+     * @param outcome SUCCESS or FAILURE of the receiver, IGNORED if the failure was not the receiver's
+     * @param durationMillis How long the delivery took
+     */
+    public void release(Permit permit, CircuitBreaker.Outcome outcome, long durationMillis) {
+        Long webhookId = permit.webhookId();
+        Isolation isolation = isolation(webhookId);
+        isolation.bulkhead.release();
+        CircuitBreaker.State before = isolation.breaker.getState();
+        CircuitBreaker.State after = isolation.breaker.record(permit.breakerPermit(), outcome, durationMillis, System.currentTimeMillis());
+        if (before != after) {
+            if (after == CircuitBreaker.State.OPEN) {
+                log.warn("Circuit breaker of webhook {} opened, deliveries paused for {} ms", webhookId, openMillis);
+            } else {
+                log.info("Circuit breaker of webhook {} is now {}", webhookId, after);
+            }
+        }
+    }
+
+    /**
+     * Webhooks that would not admit a delivery right now: open breaker, all half-open probes taken or full
+     * bulkhead. The claim leaves their deliveries in the outbox.
+     */
+    public Set<Long> unavailableWebhooks() {
+        long now = System.currentTimeMillis();
+        Set<Long> unavailable = new HashSet<>();
+        isolations.forEach((webhookId, isolation) -> {
+            if (isolation.bulkhead.availablePermits() == 0 || !isolation.breaker.isCallPermitted(now)) {
+                unavailable.add(webhookId);
+            }
+        });
+        return unavailable;
+    }
+
+    private Isolation isolation(Long webhookId) {
+        return isolations.computeIfAbsent(webhookId, id -> new Isolation(
+                new CircuitBreaker(windowSize, minimumCalls, failureRateThreshold, slowCallMillis,
+                        slowCallRateThreshold, openMillis, halfOpenProbes),
+                new Semaphore(maxConcurrentCalls)));
+    }
+
+    /**
+     * Admission of a delivery to a webhook, to be released once with the outcome of the delivery
+     */
+    public record Permit(Long webhookId, long breakerPermit) {
+    }
+
+    private record Isolation(CircuitBreaker breaker, Semaphore bulkhead) {
+    }
+}
@@ -2,166 +2,300 @@ package it.polito.cloudresources.eventprocessor.service;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import it.polito.cloudresources.eventprocessor.config.webhook.WebhookHttpProperties;
+import it.polito.cloudresources.eventprocessor.exception.WebhookDeliveryException;
 import it.polito.cloudresources.eventprocessor.model.Event;
 import it.polito.cloudresources.eventprocessor.model.Resource;
 import it.polito.cloudresources.eventprocessor.model.WebhookConfig;
+import it.polito.cloudresources.eventprocessor.model.WebhookDelivery;
 import it.polito.cloudresources.eventprocessor.model.WebhookEventType;
+import it.polito.cloudresources.eventprocessor.model.dto.BatchEventWebhookPayload;
 import it.polito.cloudresources.eventprocessor.model.dto.EventWebhookPayload;
-import it.polito.cloudresources.eventprocessor.repository.WebhookConfigRepository;
+import it.polito.cloudresources.eventprocessor.repository.EventRepository;
 import it.polito.cloudresources.eventprocessor.util.DateTimeUtils;
+import it.polito.cloudresources.eventprocessor.util.SplicedJsonPayload;
+import it.polito.cloudresources.eventprocessor.util.WebhookSigner;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.keycloak.representations.idm.UserRepresentation;
 import org.springframework.http.*;
-import org.springframework.scheduling.annotation.Async;
+import org.springframework.http.client.ClientHttpResponse;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
 
-import javax.crypto.Mac;
-import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets; // Import StandardCharsets
+import java.time.Duration;
 import java.time.ZonedDateTime;
-import java.util.Base64;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class WebhookNotifierService {
 
-    private final WebhookConfigRepository webhookConfigRepository;
-    private final RestTemplate restTemplate;
+    // Name of the only payload field that differs between the webhooks notified about the same event
+    private static final String WEBHOOK_ID_FIELD = "webhookId";
+
+    private final WebhookRoutingIndex webhookRoutingIndex;
+    private final EventRepository eventRepository;
+    private final RestTemplate webhookRestTemplate;
     private final ObjectMapper objectMapper;
     private final DateTimeUtils dateTimeUtils;
-    private final KeycloakService keycloakService;
-    private final SshKeyService sshService;
+    private final EnrichmentCacheService enrichmentCacheService;
+    private final WebhookHttpProperties webhookHttpProperties;
+    private final MeterRegistry meterRegistry;
+    private final WebhookSigner webhookSigner;
+    private final WebhookRateLimiter webhookRateLimiter;
 
 
 
     /**
-     * Notify webhooks with a single event.
-     * This method processes each event individually without batching.
-     * 
-     * @param eventType The type of webhook event
-     * @param event Single event to notify
+     * Fetch in bulk everything needed to build the payloads of a batch of deliveries:
+     * one query for the events with their resources, one for the active events of batch-mode
+     * recipients, one for the SSH keys, and one concurrent (cached) round of directory lookups
+     * for users and sites.
+     *
+     * @param deliveries The claimed outbox entries
+     * @return The snapshot the payloads are built from
      */
-    @Async
-    public void notify(WebhookEventType eventType, Event event) {
-        if (event == null) {
-            log.debug("No event provided for notification");
-            return;
-        }
+    public EnrichmentSnapshot prefetch(List<WebhookDelivery> deliveries) {
+        Set<Long> eventIds = deliveries.stream().flatMap(delivery -> delivery.getEventIds().stream()).collect(Collectors.toSet());
+        Map<Long, Event> events = eventIds.isEmpty() ? Map.of() : eventRepository.findAllWithResourceByIdIn(eventIds).stream()
+                .collect(Collectors.toMap(Event::getId, Function.identity()));
+
+        // Active resources of batch payloads are those at the notified transition, not now: starts fire start-lead-ms
+        // early, and retries may come much later. One query covers the transitions of all the batch deliveries.
+        List<WebhookDelivery> batchDeliveries = deliveries.stream().filter(WebhookDelivery::isBatch).toList();
+        Set<String> batchUserIds = batchDeliveries.stream().map(WebhookDelivery::getUserId).collect(Collectors.toSet());
+        List<ZonedDateTime> transitions = batchDeliveries.stream()
+                .map(delivery -> transitionTime(delivery.getEventType(),
+                        delivery.getEventIds().stream().map(events::get).filter(Objects::nonNull).toList()))
+                .filter(Objects::nonNull)
+                .toList();
+        Map<String, List<Event>> activeEvents = transitions.isEmpty() ? Map.of() : eventRepository
+                .findActiveEventsForUsers(batchUserIds, Collections.min(transitions), Collections.max(transitions)).stream()
+                .collect(Collectors.groupingBy(Event::getKeycloakId));
 
-        log.debug("Searching webhooks for event type {} and event ID {} for user {}", 
-                  eventType, event.getId(), event.getKeycloakId());
+        Set<String> userIds = events.values().stream().map(Event::getKeycloakId).collect(Collectors.toSet());
+        Set<String> siteIds = Stream.concat(events.values().stream(), activeEvents.values().stream().flatMap(List::stream))
+                .map(Event::getResource)
+                .filter(resource -> resource != null && resource.getSiteId() != null)
+                .map(Resource::getSiteId)
+                .collect(Collectors.toSet());
 
-        // Find webhooks subscribed to this event type for this resource
-        List<WebhookConfig> relevantWebhooks = webhookConfigRepository.findRelevantWebhooksForResourceEvent(
-                event.getResource().getId(), eventType);
+        EnrichmentSnapshot snapshot = new EnrichmentSnapshot(
+                events,
+                activeEvents,
+                enrichmentCacheService.getUsers(userIds),
+                enrichmentCacheService.getSshKeys(userIds),
+                enrichmentCacheService.getSiteNames(siteIds));
+        log.debug("Prefetched {} events, {} users, {} SSH keys and {} site names for {} deliveries",
+                events.size(), snapshot.users().size(), snapshot.sshKeys().size(), snapshot.siteNames().size(), deliveries.size());
+        return snapshot;
+    }
 
-        if (relevantWebhooks.isEmpty()) {
-            log.debug("No relevant webhooks found for event ID {}", event.getId());
-            return;
+    /**
+     * Build the serialized and signed call of a single outbox entry, without sending it: the payload of its event
+     * (or, for batch-mode webhooks, of all the user's events of the tick).
+     *
+     * @param delivery The claimed outbox entry
+     * @param snapshot Prefetched enrichment data for the entry's batch
+     * @return The call, ready to be sent
+     * @throws WebhookDeliveryException (not retryable) if the webhook or the events are gone, or the payload can't be serialized
+     */
+    public PreparedCall prepare(WebhookDelivery delivery, EnrichmentSnapshot snapshot) {
+        WebhookConfig webhook = webhookRoutingIndex.findById(delivery.getWebhookId())
+                .orElseThrow(() -> new WebhookDeliveryException(
+                        "Webhook " + delivery.getWebhookId() + " no longer exists or has been disabled", null, false));
+
+        List<Event> events = delivery.getEventIds().stream()
+                .map(snapshot.events()::get)
+                .filter(Objects::nonNull)
+                .toList();
+        if (events.isEmpty()) {
+            throw new WebhookDeliveryException("Events " + delivery.getEventIds() + " no longer exist", null, false);
         }
 
-        log.info("Found {} relevant webhooks for event ID {}", relevantWebhooks.size(), event.getId());
+        byte[] body;
+        try {
+            body = delivery.isBatch()
+                    ? objectMapper.writeValueAsBytes(createBatchPayload(delivery.getEventType(), delivery.getUserId(), events, webhook.getId(), snapshot))
+                    : encodeSharedPayload(delivery.getEventType(), events.get(0), snapshot).withField(webhook.getId());
+        } catch (JsonProcessingException | UncheckedIOException e) {
+            throw new WebhookDeliveryException("Cannot serialize payload for event IDs " + delivery.getEventIds(), null, false);
+        }
+        return new PreparedCall(webhook, delivery.getEventType(), body, createHeaders(webhook, body), delivery.getEventIds());
+    }
 
-        for (WebhookConfig webhook : relevantWebhooks) {
-            if (!webhook.isEnabled()) {
-                log.debug("Skipping disabled webhook: {}", webhook.getName());
-                continue;
-            }
+    /**
+     * The payload of a single-event delivery is the same for every webhook except for webhookId:
+     * it is serialized once per event and batch, and each webhook gets a copy with its ID spliced in.
+     * The webhooks notified about an event in the same batch therefore also share its timestamp,
+     * the time the payload was built.
+     */
+    SplicedJsonPayload encodeSharedPayload(WebhookEventType eventType, Event event, EnrichmentSnapshot snapshot) {
+        return snapshot.sharedPayloads().computeIfAbsent(new EnrichmentSnapshot.PayloadKey(event.getId(), eventType), key -> {
             try {
-                sendWebhook(webhook, eventType, event);
-            } catch (Exception e) {
-                // Log error but continue processing other webhooks
-                log.error("Error sending webhook {} for event ID {}: {}", 
-                         webhook.getName(), event.getId(), e.getMessage(), e);
-                // Consider adding retry logic or queuing failed attempts if needed
+                return SplicedJsonPayload.of(objectMapper, createPayload(eventType, event, null, snapshot), WEBHOOK_ID_FIELD);
+            } catch (JsonProcessingException e) {
+                throw new UncheckedIOException(e);
             }
-        }
+        });
     }
 
+    /**
+     * Send a prepared call, once the rate limit of its destination allows it.
+     *
+     * @param call The serialized and signed call
+     * @return The HTTP status code returned by the receiver
+     * @throws WebhookDeliveryException if the call failed or was throttled
+     */
+    public int send(PreparedCall call) {
+        WebhookConfig webhook = call.webhook();
+        WebhookEventType eventType = call.eventType();
+        byte[] body = call.body();
+        HttpHeaders headers = call.headers();
+        List<Long> eventIds = call.eventIds();
 
+        log.debug("Sending webhook '{}' for event type {} to URL: {}", webhook.getName(), eventType, webhook.getUrl());
 
-    private void sendWebhook(WebhookConfig webhook, WebhookEventType eventType, Event event) throws JsonProcessingException {
-        EventWebhookPayload payload = createPayload(eventType, event, webhook.getId());
-        log.debug(null, "Payload for webhook {}: {}", webhook.getName(), payload);
-        String payloadJson = objectMapper.writeValueAsString(payload);
-        log.debug("Payload JSON for webhook {}: {}", webhook.getName(), payloadJson);
-        HttpHeaders headers = createHeaders(webhook, payloadJson);
-
-        HttpEntity<String> entity = new HttpEntity<>(payloadJson, headers);
-
-        log.info("Sending webhook '{}' for event type {} to URL: {} with body: {}", webhook.getName(), eventType, webhook.getUrl(), entity.getBody());
+        webhookRateLimiter.acquire(webhook);
 
+        WebhookResponse response;
+        Timer.Sample sample = Timer.start(meterRegistry);
         try {
-            ResponseEntity<String> response = restTemplate.exchange(
+            response = webhookRestTemplate.execute(
                     webhook.getUrl(),
                     HttpMethod.POST,
-                    entity,
-                    String.class
+                    request -> {
+                        request.getHeaders().putAll(headers);
+                        request.getBody().write(body);
+                    },
+                    this::readResponse
             );
+        } catch (Exception e) {
+            recordAttempt(sample, webhook, "error");
+            throw new WebhookDeliveryException("Failed to send webhook '" + webhook.getName() + "': " + e.getMessage(), e);
+        }
+        int status = response.statusCode().value();
+        recordAttempt(sample, webhook, String.valueOf(status));
 
-            if (response.getStatusCode().is2xxSuccessful()) {
-                log.info("Webhook '{}' sent successfully for event ID {}. Status: {}", webhook.getName(), event.getId(), response.getStatusCode());
-            } else {
-                log.warn("Webhook '{}' for event ID {} failed. Status: {}, Response: {}", webhook.getName(), event.getId(), response.getStatusCode(), response.getBody());
+        // The receiver asks to slow down: lower its rate, and unless it is a plain 503 retry later without counting an attempt
+        if (status == 429 || status == 503) {
+            long retryAfterMillis = webhookRateLimiter.onThrottled(webhook, response.retryAfter());
+            if (status == 429 || response.retryAfter() != null) {
+                log.warn("Webhook '{}' for event IDs {} throttled with status {}, retrying in {} ms", webhook.getName(), eventIds, status, retryAfterMillis);
+                throw WebhookDeliveryException.throttled("Receiver answered " + status, status, retryAfterMillis);
             }
-        } catch (Exception e) {
-            log.error("Failed to send webhook '{}' for event ID {}: {}", webhook.getName(), event.getId(), e.getMessage());
-            throw e; // Re-throw to be caught by the caller for potential retries
         }
+        if (!response.statusCode().is2xxSuccessful()) {
+            log.warn("Webhook '{}' for event IDs {} failed. Status: {}, Response: {}", webhook.getName(), eventIds, response.statusCode(), response.body());
+            throw new WebhookDeliveryException("Receiver answered " + status, status, isRetryable(status));
+        }
+        webhookRateLimiter.onSuccess(webhook);
+        log.info("Webhook '{}' sent successfully for event IDs {}. Status: {}", webhook.getName(), eventIds, response.statusCode());
+        return response.statusCode().value();
     }
 
-    private EventWebhookPayload createPayload(WebhookEventType eventType, Event event, Long webhookId) {
-        String sshPublicKey = null;
+    // Latency histogram and response counter per webhook; status is the HTTP status code, or "error" if no response was received
+    private void recordAttempt(Timer.Sample sample, WebhookConfig webhook, String status) {
+        String webhookId = String.valueOf(webhook.getId());
+        sample.stop(Timer.builder("webhook.delivery.latency")
+                .description("Round-trip time of a webhook call")
+                .tag("webhook", webhookId)
+                .publishPercentileHistogram()
+                .register(meterRegistry));
+        Counter.builder("webhook.delivery.responses")
+                .description("Webhook calls by response status")
+                .tag("webhook", webhookId)
+                .tag("status", status)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    // Only the first few bytes of the body are kept for logging. The rest is drained, as a connection
+    // closed before the end of its body can't go back to the pool
+    private WebhookResponse readResponse(ClientHttpResponse response) throws IOException {
+        InputStream body = response.getBody();
+        byte[] head = body.readNBytes(webhookHttpProperties.getMaxResponseBodyBytes());
+        drain(body, webhookHttpProperties.getMaxDrainBytes());
+        return new WebhookResponse(response.getStatusCode(), new String(head, StandardCharsets.UTF_8),
+                parseRetryAfter(response.getHeaders().getFirst(HttpHeaders.RETRY_AFTER)));
+    }
+
+    // Reads and discards up to limit bytes; past that, closing the connection is cheaper than reading on
+    static void drain(InputStream body, long limit) throws IOException {
+        byte[] buffer = new byte[8192];
+        long drained = 0;
+        int read;
+        while (drained < limit && (read = body.read(buffer, 0, (int) Math.min(buffer.length, limit - drained))) != -1) {
+            drained += read;
+        }
+    }
+
+    // Retry-After is either a number of seconds or an HTTP date
+    private Duration parseRetryAfter(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        try {
+            return Duration.ofSeconds(Math.max(0, Long.parseLong(value.trim())));
+        } catch (NumberFormatException e) {
+            try {
+                Duration until = Duration.between(ZonedDateTime.now(), ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME));
+                return until.isNegative() ? Duration.ZERO : until;
+            } catch (DateTimeParseException invalid) {
+                log.debug("Ignoring invalid Retry-After header '{}'", value);
+                return null;
+            }
+        }
+    }
+
+    // Client errors won't fix themselves, except for timeouts and throttling
+    private boolean isRetryable(int status) {
+        return status >= 500 || status == 408 || status == 429 || status < 400;
+    }
+
+    // Package-private for the JMH benchmarks in src/jmh/java
+    EventWebhookPayload createPayload(WebhookEventType eventType, Event event, Long webhookId, EnrichmentSnapshot snapshot) {
         String username = null;
         String email = null;
         String siteName = null;
 
-        // Fetch user details from Keycloak
-        try {
-            Optional<UserRepresentation> userOpt = keycloakService.getUserById(event.getKeycloakId());
-            if (userOpt.isPresent()) {
-                UserRepresentation user = userOpt.get();
-                username = user.getUsername();
-                email = user.getEmail();
-                log.debug("Found user details for {}: username={}, email={}", event.getKeycloakId(), username, email);
-            } else {
-                log.warn("User details not found for Keycloak ID: {}", event.getKeycloakId());
-            }
-        } catch (Exception e) {
-            log.error("Error fetching user details for user {}: {}", event.getKeycloakId(), e.getMessage());
+        UserRepresentation user = snapshot.users().get(event.getKeycloakId());
+        if (user != null) {
+            username = user.getUsername();
+            email = user.getEmail();
+        } else {
+            log.warn("User details not found for Keycloak ID: {}", event.getKeycloakId());
         }
 
-        // Fetch user SSH key from Keycloak
-        try {
-            Optional<String> sshKeyOpt = sshService.getUserSshKey(event.getKeycloakId());
-            if (sshKeyOpt.isPresent()) {
-                sshPublicKey = sshKeyOpt.get(); // Use the new variable name
-                log.debug("Found SSH key for user {}", event.getKeycloakId());
-            } else {
-                log.debug("No SSH key found for user {}", event.getKeycloakId());
-            }
-        } catch (Exception e) {
-            log.error("Error fetching SSH key for user {}: {}", event.getKeycloakId(), e.getMessage());
+        String sshPublicKey = snapshot.sshKeys().get(event.getKeycloakId());
+        if (sshPublicKey == null) {
+            log.debug("No SSH key found for user {}", event.getKeycloakId());
         }
 
-        // Fetch site name from Keycloak using siteId from the resource
         Resource resource = event.getResource();
         if (resource != null && resource.getSiteId() != null) {
-            try {
-                Optional<String> siteNameOpt = keycloakService.getGroupNameById(resource.getSiteId());
-                if (siteNameOpt.isPresent()) {
-                    siteName = siteNameOpt.get();
-                    log.debug("Found site name '{}' for site ID {}", siteName, resource.getSiteId());
-                } else {
-                    log.warn("Site name not found for site ID: {}", resource.getSiteId());
-                }
-            } catch (Exception e) {
-                log.error("Error fetching site name for site ID {}: {}", resource.getSiteId(), e.getMessage());
+            siteName = snapshot.siteNames().get(resource.getSiteId());
+            if (siteName == null) {
+                log.warn("Site name not found for site ID: {}", resource.getSiteId());
             }
         }
 
@@ -197,26 +331,86 @@ public class WebhookNotifierService {
         return payloadBuilder.build();
     }
 
-    private HttpHeaders createHeaders(WebhookConfig webhook, String payloadJson) {
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.APPLICATION_JSON);
+    private BatchEventWebhookPayload createBatchPayload(WebhookEventType eventType, String userId, List<Event> events,
+                                                        Long webhookId, EnrichmentSnapshot snapshot) {
+        String username = null;
+        String email = null;
 
-        if (webhook.getSecret() != null && !webhook.getSecret().isEmpty()) {
-            try {
-                Mac sha256Hmac = Mac.getInstance("HmacSHA256");
-                // Use UTF-8 for the secret bytes
-                SecretKeySpec secretKeySpec = new SecretKeySpec(webhook.getSecret().getBytes(StandardCharsets.UTF_8), "HmacSHA256");
-                sha256Hmac.init(secretKeySpec);
-                // Use UTF-8 for the payload bytes
-                byte[] hash = sha256Hmac.doFinal(payloadJson.getBytes(StandardCharsets.UTF_8));
-                String signature = new String(Base64.getEncoder().encode(hash), StandardCharsets.UTF_8);
-                headers.add("X-Webhook-Signature", signature);
-                log.debug("Added signature header for webhook {}", webhook.getName());
-            } catch (Exception e) {
-                log.error("Error generating HMAC signature for webhook {}: {}", webhook.getName(), e.getMessage(), e);
-                // Proceed without signature if generation fails
+        UserRepresentation user = snapshot.users().get(userId);
+        if (user != null) {
+            username = user.getUsername();
+            email = user.getEmail();
+        } else {
+            log.warn("User details not found for Keycloak ID: {}", userId);
+        }
+
+        ZonedDateTime transition = transitionTime(eventType, events);
+        List<BatchEventWebhookPayload.EventInfo> activeResources = snapshot.activeEvents().getOrDefault(userId, List.of()).stream()
+                .filter(event -> !event.getStart().isAfter(transition) && event.getEnd().isAfter(transition))
+                .map(event -> createEventInfo(event, snapshot))
+                .toList();
+
+        return BatchEventWebhookPayload.builder()
+                .webhookId(String.valueOf(webhookId))
+                .eventType(eventType)
+                .timestamp(dateTimeUtils.ensureTimeZone(ZonedDateTime.now()))
+                .eventCount(events.size())
+                .userId(userId)
+                .username(username)
+                .email(email)
+                .sshPublicKey(snapshot.sshKeys().get(userId))
+                .events(events.stream().map(event -> createEventInfo(event, snapshot)).toList())
+                .activeResources(activeResources)
+                .build();
+    }
+
+    // Time of the notified transition of a batch: the latest start (or end) of its events, so that at that time all
+    // the started events are active and all the ended ones are not. Null without events.
+    private static ZonedDateTime transitionTime(WebhookEventType eventType, List<Event> events) {
+        Function<Event, ZonedDateTime> time = eventType == WebhookEventType.EVENT_END ? Event::getEnd : Event::getStart;
+        return events.stream().map(time).max(Comparator.naturalOrder()).orElse(null);
+    }
+
+    private BatchEventWebhookPayload.EventInfo createEventInfo(Event event, EnrichmentSnapshot snapshot) {
+        BatchEventWebhookPayload.EventInfo.EventInfoBuilder infoBuilder = BatchEventWebhookPayload.EventInfo.builder()
+                .eventId(event.getId().toString())
+                .eventTitle(event.getTitle())
+                .eventDescription(event.getDescription())
+                .eventStart(event.getStart())
+                .eventEnd(event.getEnd())
+                .customParameters(event.getCustomParameters());
+
+        Resource resource = event.getResource();
+        if (resource != null) {
+            infoBuilder = infoBuilder
+                    .resourceId(resource.getId())
+                    .resourceName(resource.getName())
+                    .resourceSpecs(resource.getSpecs())
+                    .resourceLocation(resource.getLocation())
+                    .siteId(resource.getSiteId())
+                    .siteName(resource.getSiteId() != null ? snapshot.siteNames().get(resource.getSiteId()) : null);
+            if (resource.getType() != null) {
+                infoBuilder = infoBuilder.resourceType(resource.getType().getName());
             }
         }
+        return infoBuilder.build();
+    }
+
+    // Package-private for the JMH benchmarks in src/jmh/java
+    HttpHeaders createHeaders(WebhookConfig webhook, byte[] body) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        webhookSigner.sign(webhook.getSecret(), body, headers);
         return headers;
     }
+
+    /**
+     * A webhook call with its payload serialized and signed, ready to be sent
+     */
+    public record PreparedCall(WebhookConfig webhook, WebhookEventType eventType, byte[] body, HttpHeaders headers,
+                               List<Long> eventIds) {
+    }
+
+    private record WebhookResponse(HttpStatusCode statusCode, String body, Duration retryAfter) {
+    }
 }
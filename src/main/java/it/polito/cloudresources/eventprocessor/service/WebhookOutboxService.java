@@ -0,0 +1,379 @@
+package it.polito.cloudresources.eventprocessor.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import it.polito.cloudresources.eventprocessor.model.Event;
+import it.polito.cloudresources.eventprocessor.model.WebhookConfig;
+import it.polito.cloudresources.eventprocessor.model.WebhookDelivery;
+import it.polito.cloudresources.eventprocessor.model.WebhookDeliveryStatus;
+import it.polito.cloudresources.eventprocessor.model.WebhookEventType;
+import it.polito.cloudresources.eventprocessor.model.dto.DueDelivery;
+import it.polito.cloudresources.eventprocessor.repository.WebhookDeliveryRepository;
+import it.polito.cloudresources.eventprocessor.util.DateTimeUtils;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Transactional outbox for webhook deliveries.
+ * The scan enqueues one row per (event, webhook), or per (user, webhook) for batch-mode webhooks, in the same transaction that stamps the event
+ * as notified; the dispatcher claims due rows and records the outcome of each attempt.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class WebhookOutboxService {
+
+    private static final int MAX_ERROR_LENGTH = 1000;
+
+    private final WebhookDeliveryRepository deliveryRepository;
+    private final WebhookRoutingIndex webhookRoutingIndex;
+    private final DateTimeUtils dateTimeUtils;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${webhook.delivery.max-attempts:8}")
+    private int maxAttempts;
+
+    @Value("${webhook.delivery.max-deferrals:20}")
+    private int maxDeferrals;
+
+    @Value("${webhook.delivery.initial-backoff-seconds:10}")
+    private long initialBackoffSeconds;
+
+    @Value("${webhook.delivery.max-backoff-seconds:3600}")
+    private long maxBackoffSeconds;
+
+    @Value("${webhook.delivery.lease-seconds:120}")
+    private long leaseSeconds;
+
+    @Value("${webhook.delivery.purge.enabled:true}")
+    private boolean purgeEnabled;
+
+    @Value("${webhook.delivery.purge.delivered-retention-hours:24}")
+    private long deliveredRetentionHours;
+
+    @Value("${webhook.delivery.purge.dead-retention-days:30}")
+    private long deadRetentionDays;
+
+    @Value("${webhook.delivery.purge.batch-size:500}")
+    private int purgeBatchSize;
+
+    @Value("${webhook.delivery.purge.max-batches:100}")
+    private int purgeMaxBatches;
+
+    // Webhooks that receive one aggregated call per user instead of one call per event
+    @Value("${webhook.delivery.batch-webhook-ids:}")
+    private Set<Long> batchWebhookIds;
+
+    // Outbox depth per state, counted by refreshDepth so that scrapes never query the database
+    private final Map<WebhookDeliveryStatus, AtomicLong> depth = new EnumMap<>(WebhookDeliveryStatus.class);
+
+    @PostConstruct
+    void registerGauges() {
+        for (WebhookDeliveryStatus status : List.of(WebhookDeliveryStatus.PENDING, WebhookDeliveryStatus.IN_FLIGHT, WebhookDeliveryStatus.DEAD)) {
+            AtomicLong count = depth.computeIfAbsent(status, s -> new AtomicLong());
+            Gauge.builder("webhook.outbox.depth", count, AtomicLong::get)
+                    .description("Webhook deliveries in the outbox by state, as of the last refresh")
+                    .tag("status", status.name())
+                    .register(meterRegistry);
+        }
+    }
+
+    /**
+     * Count the deliveries in each state for the outbox depth gauges.
+     */
+    @Scheduled(fixedDelayString = "${webhook.delivery.depth-refresh-interval:30000}")
+    public void refreshDepth() {
+        try {
+            depth.forEach((status, count) -> count.set(deliveryRepository.countByStatus(status)));
+        } catch (Exception e) {
+            // The gauges keep the previous counts
+            log.warn("Error counting webhook deliveries: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Write pending deliveries for every webhook subscribed to the given events.
+     * Webhooks in batch mode get one delivery per user, covering all that user's events of this tick;
+     * every other webhook gets one delivery per event.
+     * Must join the caller's transaction so the rows commit together with the notified-at stamp.
+     *
+     * @param eventType The type of webhook event
+     * @param events The events to notify
+     * @return Number of deliveries enqueued
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public int enqueue(WebhookEventType eventType, List<Event> events) {
+        ZonedDateTime now = dateTimeUtils.getCurrentDateTime();
+        // webhook ID -> user ID -> event IDs, for webhooks in batch mode
+        Map<Long, Map<String, List<Long>>> batches = new LinkedHashMap<>();
+        int enqueued = 0;
+
+        for (Event event : events) {
+            List<WebhookConfig> relevantWebhooks = webhookRoutingIndex.findRelevantWebhooks(event.getResource(), eventType);
+            if (relevantWebhooks.isEmpty()) {
+                log.debug("No relevant webhooks found for event ID {}", event.getId());
+                continue;
+            }
+
+            for (WebhookConfig webhook : relevantWebhooks) {
+                if (batchWebhookIds.contains(webhook.getId())) {
+                    batches.computeIfAbsent(webhook.getId(), id -> new LinkedHashMap<>())
+                            .computeIfAbsent(event.getKeycloakId(), id -> new ArrayList<>())
+                            .add(event.getId());
+                    continue;
+                }
+                deliveryRepository.save(WebhookDelivery.builder()
+                        .webhookId(webhook.getId())
+                        .eventId(event.getId())
+                        .userId(event.getKeycloakId())
+                        .eventType(eventType)
+                        .nextAttemptAt(now)
+                        .createdAt(now)
+                        .build());
+                enqueued++;
+            }
+        }
+
+        for (Map.Entry<Long, Map<String, List<Long>>> webhookBatches : batches.entrySet()) {
+            for (Map.Entry<String, List<Long>> userBatch : webhookBatches.getValue().entrySet()) {
+                for (List<Long> eventIds : splitBatch(userBatch.getValue())) {
+                    deliveryRepository.save(WebhookDelivery.builder()
+                            .webhookId(webhookBatches.getKey())
+                            .eventId(eventIds.get(0))
+                            .batchEventIds(eventIds.stream().map(String::valueOf).collect(Collectors.joining(",")))
+                            .userId(userBatch.getKey())
+                            .eventType(eventType)
+                            .nextAttemptAt(now)
+                            .createdAt(now)
+                            .build());
+                    enqueued++;
+                }
+            }
+        }
+
+        if (enqueued > 0) {
+            log.info("Enqueued {} webhook deliveries for {} {} events", enqueued, events.size(), eventType);
+        }
+        return enqueued;
+    }
+
+    // A user's batch is split over several deliveries when its comma-separated IDs don't fit in batch_event_ids
+    private List<List<Long>> splitBatch(List<Long> eventIds) {
+        List<List<Long>> parts = new ArrayList<>();
+        List<Long> part = new ArrayList<>();
+        int length = 0;
+        for (Long eventId : eventIds) {
+            int idLength = String.valueOf(eventId).length();
+            if (!part.isEmpty() && length + 1 + idLength > WebhookDelivery.BATCH_EVENT_IDS_LENGTH) {
+                parts.add(part);
+                part = new ArrayList<>();
+                length = 0;
+            }
+            length += part.isEmpty() ? idLength : 1 + idLength;
+            part.add(eventId);
+        }
+        parts.add(part);
+        return parts;
+    }
+
+    /**
+     * Find due deliveries, without claiming them yet.
+     *
+     * @param limit Maximum number of deliveries to return
+     * @param excludedWebhookIds Webhooks whose deliveries are left in the outbox
+     * @return The due deliveries, oldest first
+     */
+    @Transactional(readOnly = true)
+    public List<DueDelivery> findDueDeliveries(int limit, Collection<Long> excludedWebhookIds) {
+        // NOT IN over an empty list is not portable, and webhook IDs are never negative
+        Collection<Long> excluded = excludedWebhookIds.isEmpty() ? List.of(-1L) : excludedWebhookIds;
+        return deliveryRepository.findDueDeliveries(dateTimeUtils.getCurrentDateTime(), excluded, PageRequest.of(0, limit));
+    }
+
+    /**
+     * Claim due deliveries found by {@link #findDueDeliveries}, marking them in-flight under a lease.
+     * Rows are locked with SKIP LOCKED, so any number of replicas can claim concurrently without
+     * overlapping; a lease that expires (the replica died mid-delivery) makes the row claimable again.
+     *
+     * @param deliveryIds The deliveries to claim
+     * @return The claimed deliveries, a subset of the given ones
+     */
+    @Transactional
+    public List<WebhookDelivery> claim(Collection<Long> deliveryIds) {
+        if (deliveryIds.isEmpty()) {
+            return List.of();
+        }
+        ZonedDateTime now = dateTimeUtils.getCurrentDateTime();
+        List<WebhookDelivery> due = deliveryRepository.lockDueDeliveries(deliveryIds, now);
+        for (WebhookDelivery delivery : due) {
+            if (delivery.getStatus() == WebhookDeliveryStatus.IN_FLIGHT) {
+                log.warn("Reclaiming webhook delivery {} whose lease expired at {}", delivery.getId(), delivery.getLeaseExpiresAt());
+            }
+            delivery.setStatus(WebhookDeliveryStatus.IN_FLIGHT);
+            delivery.setLeaseExpiresAt(now.plusSeconds(leaseSeconds));
+        }
+        return due;
+    }
+
+    /**
+     * Put claimed deliveries back in the queue without counting an attempt, e.g. because they were
+     * about to outlive their lease or the dispatcher is shutting down.
+     *
+     * @param deliveryIds The deliveries to release
+     * @param delayMillis How long until they may be claimed again
+     */
+    @Transactional
+    public void defer(List<Long> deliveryIds, long delayMillis) {
+        ZonedDateTime nextAttemptAt = dateTimeUtils.getCurrentDateTime().plus(Duration.ofMillis(delayMillis));
+        int deferred = deliveryRepository.defer(deliveryIds, nextAttemptAt);
+        log.debug("Deferred {} webhook deliveries until {}", deferred, dateTimeUtils.formatDateTime(nextAttemptAt));
+    }
+
+    /**
+     * Record a successful attempt.
+     */
+    @Transactional
+    public void recordSuccess(Long deliveryId, int statusCode) {
+        deliveryRepository.findById(deliveryId).ifPresent(delivery -> {
+            delivery.setAttempts(delivery.getAttempts() + 1);
+            delivery.setStatus(WebhookDeliveryStatus.DELIVERED);
+            delivery.setLastStatusCode(statusCode);
+            delivery.setLastError(null);
+            delivery.setLeaseExpiresAt(null);
+            delivery.setDeliveredAt(dateTimeUtils.getCurrentDateTime());
+        });
+    }
+
+    /**
+     * Record a failed attempt. The delivery is rescheduled with exponential backoff,
+     * or moved to the dead-letter state when it is not retryable or out of attempts.
+     */
+    @Transactional
+    public void recordFailure(Long deliveryId, Integer statusCode, String error, boolean retryable) {
+        deliveryRepository.findById(deliveryId).ifPresent(delivery -> fail(delivery, statusCode, error, retryable, 0));
+    }
+
+    /**
+     * Record a throttled attempt (429, or 503 with Retry-After). Up to max-deferrals the delivery is put back
+     * until retryAfterMillis without counting an attempt; past that, every further throttle counts as a failed
+     * attempt, so an endpoint that always throttles is eventually dead-lettered instead of retried forever.
+     */
+    @Transactional
+    public void recordThrottled(Long deliveryId, Integer statusCode, String error, long retryAfterMillis) {
+        deliveryRepository.findById(deliveryId).ifPresent(delivery -> {
+            int deferrals = delivery.getDeferrals() + 1;
+            delivery.setDeferrals(deferrals);
+            if (deferrals > maxDeferrals) {
+                fail(delivery, statusCode, error, true, retryAfterMillis);
+                return;
+            }
+            delivery.setStatus(WebhookDeliveryStatus.PENDING);
+            delivery.setNextAttemptAt(dateTimeUtils.getCurrentDateTime().plus(Duration.ofMillis(retryAfterMillis)));
+            delivery.setLeaseExpiresAt(null);
+            delivery.setLastStatusCode(statusCode);
+            delivery.setLastError(truncate(error));
+        });
+    }
+
+    // Counts the attempt and reschedules the delivery no earlier than minDelayMillis, or dead-letters it
+    private void fail(WebhookDelivery delivery, Integer statusCode, String error, boolean retryable, long minDelayMillis) {
+        int attempts = delivery.getAttempts() + 1;
+        delivery.setAttempts(attempts);
+        delivery.setLastStatusCode(statusCode);
+        delivery.setLastError(truncate(error));
+        delivery.setLeaseExpiresAt(null);
+
+        if (!retryable || attempts >= maxAttempts) {
+            delivery.setStatus(WebhookDeliveryStatus.DEAD);
+            log.error("Webhook delivery {} (webhook {}, event {}) moved to dead letter after {} attempts: {}",
+                    delivery.getId(), delivery.getWebhookId(), delivery.getEventId(), attempts, error);
+            return;
+        }
+
+        long delayMillis = Math.max(Duration.ofSeconds(backoffSeconds(attempts)).toMillis(), minDelayMillis);
+        ZonedDateTime nextAttemptAt = dateTimeUtils.getCurrentDateTime().plus(Duration.ofMillis(delayMillis));
+        delivery.setStatus(WebhookDeliveryStatus.PENDING);
+        delivery.setNextAttemptAt(nextAttemptAt);
+        log.warn("Webhook delivery {} (webhook {}, event {}) failed on attempt {}/{}, retrying at {}: {}",
+                delivery.getId(), delivery.getWebhookId(), delivery.getEventId(), attempts, maxAttempts,
+                dateTimeUtils.formatDateTime(nextAttemptAt), error);
+    }
+
+    // Capped exponential backoff with up to 10% jitter, so retries of a burst don't line up
+    private long backoffSeconds(int attempts) {
+        long backoff = initialBackoffSeconds << Math.min(attempts - 1, 30);
+        if (backoff <= 0 || backoff > maxBackoffSeconds) {
+            backoff = maxBackoffSeconds;
+        }
+        return backoff + ThreadLocalRandom.current().nextLong(backoff / 10 + 1);
+    }
+
+    /**
+     * Delete delivered rows older than delivered-retention-hours and dead rows older than dead-retention-days,
+     * so the outbox only holds recent history. Rows are deleted in batches of purge.batch-size, each in its own
+     * transaction, and at most purge.max-batches per state and run; a larger backlog is worked off over the next runs.
+     */
+    @Scheduled(fixedDelayString = "${webhook.delivery.purge.interval:300000}", initialDelayString = "${webhook.delivery.purge.interval:300000}")
+    public void purge() {
+        if (!purgeEnabled) {
+            return;
+        }
+        ZonedDateTime now = dateTimeUtils.getCurrentDateTime();
+        ZonedDateTime deliveredBefore = now.minusHours(deliveredRetentionHours);
+        ZonedDateTime deadBefore = now.minusDays(deadRetentionDays);
+        try {
+            int delivered = purge(batch -> deliveryRepository.findDeliveredBefore(deliveredBefore, batch));
+            int dead = purge(batch -> deliveryRepository.findDeadBefore(deadBefore, batch));
+            if (delivered + dead > 0) {
+                log.info("Purged {} delivered webhook deliveries older than {} and {} dead ones older than {}",
+                        delivered, dateTimeUtils.formatDateTime(deliveredBefore), dead, dateTimeUtils.formatDateTime(deadBefore));
+            }
+        } catch (Exception e) {
+            // What is left is purged by the next run
+            log.error("Error purging webhook deliveries: {}", e.getMessage(), e);
+        }
+    }
+
+    private int purge(Function<Pageable, List<Long>> findBatch) {
+        int purged = 0;
+        for (int i = 0; i < purgeMaxBatches; i++) {
+            List<Long> ids = findBatch.apply(PageRequest.of(0, purgeBatchSize));
+            if (!ids.isEmpty()) {
+                purged += deliveryRepository.deleteByIdIn(ids);
+            }
+            if (ids.size() < purgeBatchSize) {
+                break;
+            }
+        }
+        return purged;
+    }
+
+    private String truncate(String error) {
+        if (error == null || error.length() <= MAX_ERROR_LENGTH) {
+            return error;
+        }
+        return error.substring(0, MAX_ERROR_LENGTH);
+    }
+}
@@ -0,0 +1,117 @@
+package it.polito.cloudresources.eventprocessor.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import it.polito.cloudresources.eventprocessor.config.webhook.WebhookRateLimitProperties;
+import it.polito.cloudresources.eventprocessor.exception.WebhookDeliveryException;
+import it.polito.cloudresources.eventprocessor.model.WebhookConfig;
+import it.polito.cloudresources.eventprocessor.util.AdaptiveTokenBucket;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adaptive rate limits per destination host (or per webhook, for webhooks with a rate of their own).
+ * Each destination has an AIMD token bucket: successful calls slowly raise its rate, 429 and 503 responses
+ * halve it and honor Retry-After. A delivery waits in memory for its token up to max-wait; beyond that it
+ * is rejected as throttled and put back in the outbox, so deliveries are queued rather than dropped.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class WebhookRateLimiter {
+
+    private final WebhookRateLimitProperties properties;
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, AdaptiveTokenBucket> buckets = new ConcurrentHashMap<>();
+
+    /**
+     * Wait for a token of the webhook's destination.
+     *
+     * @param webhook The webhook about to be called
+     * @throws WebhookDeliveryException (throttled) if the token is not available within max-wait
+     */
+    public void acquire(WebhookConfig webhook) {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        String key = key(webhook);
+        AdaptiveTokenBucket bucket = bucket(key, webhook);
+        long waitNanos = bucket.reserve(System.nanoTime());
+        if (waitNanos <= 0) {
+            return;
+        }
+        if (waitNanos > properties.getMaxWait().toNanos()) {
+            bucket.cancel();
+            throw WebhookDeliveryException.throttled("Rate limit of " + key + " reached", null,
+                    TimeUnit.NANOSECONDS.toMillis(waitNanos));
+        }
+        try {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new WebhookDeliveryException("Interrupted while waiting for the rate limit of " + key, e);
+        }
+    }
+
+    /**
+     * Record a successful call, raising the destination's rate
+     */
+    public void onSuccess(WebhookConfig webhook) {
+        if (properties.isEnabled()) {
+            bucket(key(webhook), webhook).onSuccess();
+        }
+    }
+
+    /**
+     * Record a throttling response (429 or 503), lowering the destination's rate.
+     *
+     * @param webhook The webhook that was called
+     * @param retryAfter The receiver's Retry-After, or null
+     * @return How long the delivery should wait before it is attempted again, in milliseconds
+     */
+    public long onThrottled(WebhookConfig webhook, Duration retryAfter) {
+        Duration pause = retryAfter == null ? Duration.ZERO
+                : retryAfter.compareTo(properties.getMaxRetryAfter()) > 0 ? properties.getMaxRetryAfter() : retryAfter;
+        if (!properties.isEnabled()) {
+            return pause.toMillis();
+        }
+        String key = key(webhook);
+        AdaptiveTokenBucket bucket = bucket(key, webhook);
+        bucket.onThrottled(pause.toNanos(), System.nanoTime());
+        log.info("Destination {} throttled deliveries, rate lowered to {} requests/s{}", key,
+                String.format("%.1f", bucket.getRate()), pause.isZero() ? "" : ", paused for " + pause);
+        // At least one token interval at the lowered rate, so the retry doesn't hit the receiver straight away
+        return Math.max(pause.toMillis(), (long) (1000 / bucket.getRate()));
+    }
+
+    private String key(WebhookConfig webhook) {
+        if (properties.getWebhookRates().containsKey(webhook.getId())) {
+            return "webhook:" + webhook.getId();
+        }
+        String host = URI.create(webhook.getUrl()).getHost();
+        return "host:" + (host != null ? host : webhook.getUrl());
+    }
+
+    private AdaptiveTokenBucket bucket(String key, WebhookConfig webhook) {
+        return buckets.computeIfAbsent(key, k -> {
+            double initialRate = properties.getWebhookRates().getOrDefault(webhook.getId(),
+                    properties.getHostRates().getOrDefault(URI.create(webhook.getUrl()).getHost(), properties.getInitialRate()));
+            AdaptiveTokenBucket bucket = new AdaptiveTokenBucket(initialRate, properties.getMinRate(), properties.getMaxRate(),
+                    properties.getBurst(), properties.getAdditiveIncrease(), properties.getDecreaseFactor(),
+                    properties.getDecreaseCooldown().toNanos(), System.nanoTime());
+            Gauge.builder("webhook.rate.limit", bucket, AdaptiveTokenBucket::getRate)
+                    .description("Current adaptive rate limit of a webhook destination, in requests per second")
+                    .tag("destination", k)
+                    .register(meterRegistry);
+            return bucket;
+        });
+    }
+}
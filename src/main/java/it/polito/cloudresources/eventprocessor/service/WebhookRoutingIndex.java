@@ -0,0 +1,144 @@
+package it.polito.cloudresources.eventprocessor.service;
+
+import it.polito.cloudresources.eventprocessor.model.Resource;
+import it.polito.cloudresources.eventprocessor.model.WebhookConfig;
+import it.polito.cloudresources.eventprocessor.model.WebhookEventType;
+import it.polito.cloudresources.eventprocessor.repository.WebhookConfigRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * In-memory routing index of the enabled webhook configurations.
+ * Subscribers are indexed by resource ID, resource type ID and global scope, each split by event type
+ * (webhooks subscribed to ALL are listed under every type). The index is rebuilt periodically, or on
+ * demand via {@link #refresh()}, and swapped atomically, so lookups never touch the database.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class WebhookRoutingIndex {
+
+    private final WebhookConfigRepository webhookConfigRepository;
+
+    private volatile Snapshot snapshot;
+
+    /**
+     * Reload the enabled webhooks and swap in a new index.
+     */
+    @Scheduled(fixedDelayString = "${webhook.routing.refresh-interval:30000}", initialDelayString = "${webhook.routing.refresh-interval:30000}")
+    public void refresh() {
+        try {
+            List<WebhookConfig> webhooks = webhookConfigRepository.findByEnabledTrue();
+            snapshot = Snapshot.of(webhooks);
+            log.debug("Webhook routing index refreshed with {} enabled webhooks", webhooks.size());
+        } catch (Exception e) {
+            log.error("Error refreshing webhook routing index, keeping the previous one: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Finds enabled webhooks relevant to a specific resource event.
+     * A webhook is relevant if it subscribes to the eventType (or ALL) and is configured for the
+     * resource, for the resource's type, or for neither (global).
+     *
+     * @param resource The resource the event refers to
+     * @param eventType The type of webhook event
+     * @return The subscribed webhooks, without duplicates
+     */
+    public List<WebhookConfig> findRelevantWebhooks(Resource resource, WebhookEventType eventType) {
+        Snapshot current = current();
+        Long resourceTypeId = resource.getType() != null ? resource.getType().getId() : null;
+
+        Map<Long, WebhookConfig> relevant = new LinkedHashMap<>();
+        for (WebhookConfig webhook : current.lookup(current.byResource, resource.getId(), eventType)) {
+            relevant.put(webhook.getId(), webhook);
+        }
+        for (WebhookConfig webhook : current.lookup(current.byResourceType, resourceTypeId, eventType)) {
+            relevant.put(webhook.getId(), webhook);
+        }
+        for (WebhookConfig webhook : current.global.getOrDefault(eventType, List.of())) {
+            relevant.put(webhook.getId(), webhook);
+        }
+        return new ArrayList<>(relevant.values());
+    }
+
+    /**
+     * Find an enabled webhook by ID
+     */
+    public Optional<WebhookConfig> findById(Long webhookId) {
+        return Optional.ofNullable(current().byId.get(webhookId));
+    }
+
+    // The first lookup loads the index synchronously: routing against an empty index would drop notifications
+    private Snapshot current() {
+        Snapshot current = snapshot;
+        if (current == null) {
+            synchronized (this) {
+                if (snapshot == null) {
+                    refresh();
+                }
+                current = snapshot;
+            }
+            if (current == null) {
+                throw new IllegalStateException("Webhook routing index is not available");
+            }
+        }
+        return current;
+    }
+
+    private record Snapshot(Map<Long, WebhookConfig> byId,
+                            Map<Long, Map<WebhookEventType, List<WebhookConfig>>> byResource,
+                            Map<Long, Map<WebhookEventType, List<WebhookConfig>>> byResourceType,
+                            Map<WebhookEventType, List<WebhookConfig>> global) {
+
+        static Snapshot of(List<WebhookConfig> webhooks) {
+            Map<Long, WebhookConfig> byId = new HashMap<>();
+            Map<Long, Map<WebhookEventType, List<WebhookConfig>>> byResource = new HashMap<>();
+            Map<Long, Map<WebhookEventType, List<WebhookConfig>>> byResourceType = new HashMap<>();
+            Map<WebhookEventType, List<WebhookConfig>> global = new EnumMap<>(WebhookEventType.class);
+
+            for (WebhookConfig webhook : webhooks) {
+                byId.put(webhook.getId(), webhook);
+                if (webhook.getResourceId() == null && webhook.getResourceTypeId() == null) {
+                    addByEventType(global, webhook);
+                    continue;
+                }
+                if (webhook.getResourceId() != null) {
+                    addByEventType(byResource.computeIfAbsent(webhook.getResourceId(), id -> new EnumMap<>(WebhookEventType.class)), webhook);
+                }
+                if (webhook.getResourceTypeId() != null) {
+                    addByEventType(byResourceType.computeIfAbsent(webhook.getResourceTypeId(), id -> new EnumMap<>(WebhookEventType.class)), webhook);
+                }
+            }
+            return new Snapshot(Collections.unmodifiableMap(byId), byResource, byResourceType, global);
+        }
+
+        private static void addByEventType(Map<WebhookEventType, List<WebhookConfig>> index, WebhookConfig webhook) {
+            if (webhook.getEventType() == WebhookEventType.ALL) {
+                for (WebhookEventType eventType : WebhookEventType.values()) {
+                    index.computeIfAbsent(eventType, type -> new ArrayList<>()).add(webhook);
+                }
+            } else if (webhook.getEventType() != null) {
+                index.computeIfAbsent(webhook.getEventType(), type -> new ArrayList<>()).add(webhook);
+            }
+        }
+
+        List<WebhookConfig> lookup(Map<Long, Map<WebhookEventType, List<WebhookConfig>>> index, Long key, WebhookEventType eventType) {
+            if (key == null) {
+                return List.of();
+            }
+            return index.getOrDefault(key, Map.of()).getOrDefault(eventType, List.of());
+        }
+    }
+}
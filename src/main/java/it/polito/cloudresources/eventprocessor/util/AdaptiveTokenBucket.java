@@ -0,0 +1,113 @@
+package it.polito.cloudresources.eventprocessor.util;
+
+/**
+ * Token bucket whose rate adapts with AIMD (additive increase, multiplicative decrease).
+ * Every successful call raises the rate so that it grows by {@code additiveIncrease} requests per second
+ * for each second of calls at the current rate; a throttling response cuts it by {@code decreaseFactor}
+ * (at most once per cooldown, so a burst of rejections counts once) and may pause the bucket, e.g. for
+ * the receiver's Retry-After.
+ * Tokens are reserved ahead: the bucket can go into debt, and the caller waits until its token is due.
+ */
+public class AdaptiveTokenBucket {
+
+    private static final double NANOS_PER_SECOND = 1_000_000_000d;
+
+    private final double minRate;
+    private final double maxRate;
+    private final double capacity;
+    private final double additiveIncrease;
+    private final double decreaseFactor;
+    private final long decreaseCooldownNanos;
+
+    private double rate;
+    private double tokens;
+    private long lastRefillNanos;
+    private long pausedUntilNanos;
+    private long lastDecreaseNanos;
+
+    public AdaptiveTokenBucket(double initialRate, double minRate, double maxRate, int burst,
+                               double additiveIncrease, double decreaseFactor, long decreaseCooldownNanos, long nowNanos) {
+        this.minRate = minRate;
+        this.maxRate = maxRate;
+        this.capacity = burst;
+        this.additiveIncrease = additiveIncrease;
+        this.decreaseFactor = decreaseFactor;
+        this.decreaseCooldownNanos = decreaseCooldownNanos;
+        this.rate = Math.clamp(initialRate, minRate, maxRate);
+        this.tokens = burst;
+        this.lastRefillNanos = nowNanos;
+        this.pausedUntilNanos = nowNanos;
+        this.lastDecreaseNanos = nowNanos - decreaseCooldownNanos;
+    }
+
+    /**
+     * Reserve a token.
+     *
+     * @param nowNanos The current {@link System#nanoTime()}
+     * @return Nanoseconds to wait before using the token, 0 if it can be used right away
+     */
+    public long reserve(long nowNanos) {
+        return reserve(nowNanos, 1);
+    }
+
+    /**
+     * Reserve several tokens at once.
+     *
+     * @param nowNanos The current {@link System#nanoTime()}
+     * @param permits Number of tokens
+     * @return Nanoseconds to wait before using the tokens, 0 if they can be used right away
+     */
+    public synchronized long reserve(long nowNanos, int permits) {
+        refill(nowNanos);
+        tokens -= permits;
+        long debtWait = tokens >= 0 ? 0 : (long) (-tokens / rate * NANOS_PER_SECOND);
+        return Math.max(debtWait, pausedUntilNanos - nowNanos);
+    }
+
+    /**
+     * Return a reserved token that will not be used
+     */
+    public synchronized void cancel() {
+        tokens += 1;
+    }
+
+    /**
+     * Additive increase after a successful call
+     */
+    public synchronized void onSuccess() {
+        rate = Math.min(maxRate, rate + additiveIncrease / rate);
+    }
+
+    /**
+     * Multiplicative decrease after a throttling response.
+     *
+     * @param pauseNanos How long to stop sending (e.g. the Retry-After), 0 for no pause
+     * @param nowNanos The current {@link System#nanoTime()}
+     */
+    public synchronized void onThrottled(long pauseNanos, long nowNanos) {
+        refill(nowNanos);
+        if (nowNanos - lastDecreaseNanos >= decreaseCooldownNanos) {
+            rate = Math.max(minRate, rate * decreaseFactor);
+            lastDecreaseNanos = nowNanos;
+        }
+        // Drop the saved-up burst, the receiver is already saturated
+        tokens = Math.min(tokens, 0);
+        if (pauseNanos > 0) {
+            pausedUntilNanos = Math.max(pausedUntilNanos, nowNanos + pauseNanos);
+        }
+    }
+
+    /**
+     * Current rate in requests per second
+     */
+    public synchronized double getRate() {
+        return rate;
+    }
+
+    private void refill(long nowNanos) {
+        if (nowNanos > lastRefillNanos) {
+            tokens = Math.min(capacity, tokens + (nowNanos - lastRefillNanos) * rate / NANOS_PER_SECOND);
+            lastRefillNanos = nowNanos;
+        }
+    }
+}
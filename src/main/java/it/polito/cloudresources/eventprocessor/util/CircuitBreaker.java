@@ -0,0 +1,163 @@
+package it.polito.cloudresources.eventprocessor.util;
+
+/**
+ * Count-based circuit breaker.
+ * While closed, the outcomes of the last {@code windowSize} calls are kept; once at least {@code minimumCalls}
+ * were recorded and the share of failed or of slow calls reaches its threshold, the breaker opens and rejects
+ * calls for {@code openMillis}. Then it lets {@code halfOpenProbes} calls through: if all of them succeed it
+ * closes again, otherwise it reopens.
+ * Every permit carries the generation of the state it was granted in, which changes on every transition:
+ * late results of calls permitted before a transition are not counted, so only the probes decide a half-open
+ * breaker.
+ */
+public class CircuitBreaker {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    /**
+     * Outcome of a call, as seen by the breaker
+     */
+    public enum Outcome { SUCCESS, FAILURE, IGNORED }
+
+    /**
+     * Returned by {@link #tryAcquire} when the call is rejected
+     */
+    public static final long REJECTED = -1;
+
+    private final int windowSize;
+    private final int minimumCalls;
+    private final int failureRateThreshold;
+    private final long slowCallMillis;
+    private final int slowCallRateThreshold;
+    private final long openMillis;
+    private final int halfOpenProbes;
+
+    // Ring buffer of the last calls: bit 0 = failed, bit 1 = slow
+    private final byte[] window;
+    private int position;
+    private int recorded;
+    private int failures;
+    private int slowCalls;
+
+    private State state = State.CLOSED;
+    private long generation;
+    private long openUntil;
+    private int probesInFlight;
+    private int probesSucceeded;
+
+    public CircuitBreaker(int windowSize, int minimumCalls, int failureRateThreshold,
+                          long slowCallMillis, int slowCallRateThreshold, long openMillis, int halfOpenProbes) {
+        this.windowSize = windowSize;
+        this.minimumCalls = minimumCalls;
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowCallMillis = slowCallMillis;
+        this.slowCallRateThreshold = slowCallRateThreshold;
+        this.openMillis = openMillis;
+        this.halfOpenProbes = halfOpenProbes;
+        this.window = new byte[windowSize];
+    }
+
+    /**
+     * Ask for permission to make a call. Every permitted call must be followed by {@link #record}.
+     *
+     * @param nowMillis The current time
+     * @return The permit to pass to {@link #record}, or {@link #REJECTED} if the call may not proceed
+     */
+    public synchronized long tryAcquire(long nowMillis) {
+        if (state == State.OPEN) {
+            if (nowMillis < openUntil) {
+                return REJECTED;
+            }
+            transition(State.HALF_OPEN);
+            probesInFlight = 0;
+            probesSucceeded = 0;
+        }
+        if (state == State.HALF_OPEN) {
+            if (probesInFlight + probesSucceeded >= halfOpenProbes) {
+                return REJECTED;
+            }
+            probesInFlight++;
+        }
+        return generation;
+    }
+
+    /**
+     * Record the outcome of a permitted call.
+     *
+     * @param permit The permit returned by {@link #tryAcquire}
+     * @param outcome The outcome
+     * @param durationMillis How long the call took
+     * @param nowMillis The current time
+     * @return The state after recording
+     */
+    public synchronized State record(long permit, Outcome outcome, long durationMillis, long nowMillis) {
+        if (permit != generation) {
+            // Late result of a call permitted before the last transition
+            return state;
+        }
+        if (state == State.HALF_OPEN) {
+            probesInFlight--;
+            if (outcome == Outcome.FAILURE || (outcome == Outcome.SUCCESS && durationMillis >= slowCallMillis)) {
+                open(nowMillis);
+            } else if (outcome == Outcome.SUCCESS && ++probesSucceeded >= halfOpenProbes) {
+                close();
+            }
+            return state;
+        }
+        if (outcome == Outcome.IGNORED) {
+            return state;
+        }
+
+        byte call = (byte) ((outcome == Outcome.FAILURE ? 1 : 0) | (durationMillis >= slowCallMillis ? 2 : 0));
+        if (recorded == windowSize) {
+            byte evicted = window[position];
+            failures -= evicted & 1;
+            slowCalls -= (evicted >> 1) & 1;
+        } else {
+            recorded++;
+        }
+        window[position] = call;
+        position = (position + 1) % windowSize;
+        failures += call & 1;
+        slowCalls += (call >> 1) & 1;
+
+        if (recorded >= minimumCalls
+                && (failures * 100 >= failureRateThreshold * recorded || slowCalls * 100 >= slowCallRateThreshold * recorded)) {
+            open(nowMillis);
+        }
+        return state;
+    }
+
+    /**
+     * Whether {@link #tryAcquire} would currently permit a call, without taking a permit
+     */
+    public synchronized boolean isCallPermitted(long nowMillis) {
+        return switch (state) {
+            case CLOSED -> true;
+            case OPEN -> nowMillis >= openUntil;
+            case HALF_OPEN -> probesInFlight + probesSucceeded < halfOpenProbes;
+        };
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    private void open(long nowMillis) {
+        transition(State.OPEN);
+        openUntil = nowMillis + openMillis;
+    }
+
+    private void close() {
+        transition(State.CLOSED);
+        position = 0;
+        recorded = 0;
+        failures = 0;
+        slowCalls = 0;
+    }
+
+    private void transition(State newState) {
+        state = newState;
+        generation++;
+    }
+}
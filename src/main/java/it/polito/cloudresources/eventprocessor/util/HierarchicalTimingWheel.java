@@ -0,0 +1,151 @@
+package it.polito.cloudresources.eventprocessor.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hierarchical timing wheel for firing tasks at an exact wall-clock instant.
+ * The finest level has {@code wheelSize} buckets of {@code tickMillis} each; deadlines beyond its span go to
+ * coarser overflow levels (created on demand) and cascade down as the clock advances. Only non-empty buckets
+ * are queued, so the driving thread sleeps until the next bucket is due instead of ticking through empty ones.
+ *
+ * @param <T> The type of the scheduled tasks
+ */
+public class HierarchicalTimingWheel<T> {
+
+    private final DelayQueue<Bucket<T>> queue = new DelayQueue<>();
+    private final Level root;
+    private int size;
+
+    public HierarchicalTimingWheel(long tickMillis, int wheelSize, long startMillis) {
+        this.root = new Level(tickMillis, wheelSize, startMillis);
+    }
+
+    /**
+     * Schedule a task.
+     *
+     * @param task The task
+     * @param deadlineMillis When the task is due, in epoch milliseconds
+     * @return false if the deadline falls within the current tick, in which case the task is not
+     *         scheduled and should be run right away by the caller
+     */
+    public synchronized boolean schedule(T task, long deadlineMillis) {
+        if (!root.add(new Entry<>(task, deadlineMillis))) {
+            return false;
+        }
+        size++;
+        return true;
+    }
+
+    /**
+     * Wait for the next bucket to expire and collect the tasks that are due.
+     *
+     * @param timeoutMillis Maximum time to wait
+     * @return The due tasks, empty if the timeout elapsed first
+     */
+    public List<T> poll(long timeoutMillis) throws InterruptedException {
+        List<T> expired = new ArrayList<>();
+        Bucket<T> bucket = queue.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+        while (bucket != null) {
+            synchronized (this) {
+                root.advanceClock(bucket.expiration);
+                // Entries of a coarse bucket are re-added to finer levels, the ones now due are returned
+                for (Entry<T> entry : bucket.flush()) {
+                    if (!root.add(entry)) {
+                        expired.add(entry.task);
+                        size--;
+                    }
+                }
+            }
+            bucket = queue.poll();
+        }
+        return expired;
+    }
+
+    /**
+     * Number of tasks currently scheduled
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    private final class Level {
+
+        private final long tickMillis;
+        private final int wheelSize;
+        private final long interval;
+        private final List<Bucket<T>> buckets;
+        private long currentTime;
+        private Level overflow;
+
+        private Level(long tickMillis, int wheelSize, long startMillis) {
+            this.tickMillis = tickMillis;
+            this.wheelSize = wheelSize;
+            this.interval = tickMillis * wheelSize;
+            this.currentTime = startMillis - (startMillis % tickMillis);
+            this.buckets = new ArrayList<>(wheelSize);
+            for (int i = 0; i < wheelSize; i++) {
+                buckets.add(new Bucket<>());
+            }
+        }
+
+        private boolean add(Entry<T> entry) {
+            if (entry.deadline < currentTime + tickMillis) {
+                return false;
+            }
+            if (entry.deadline < currentTime + interval) {
+                long virtualId = entry.deadline / tickMillis;
+                Bucket<T> bucket = buckets.get((int) (virtualId % wheelSize));
+                bucket.entries.add(entry);
+                // A bucket is only (re)queued when it starts a new round, i.e. its expiration changes
+                if (bucket.expiration != virtualId * tickMillis) {
+                    bucket.expiration = virtualId * tickMillis;
+                    queue.offer(bucket);
+                }
+                return true;
+            }
+            if (overflow == null) {
+                overflow = new Level(interval, wheelSize, currentTime);
+            }
+            return overflow.add(entry);
+        }
+
+        private void advanceClock(long time) {
+            if (time >= currentTime + tickMillis) {
+                currentTime = time - (time % tickMillis);
+                if (overflow != null) {
+                    overflow.advanceClock(currentTime);
+                }
+            }
+        }
+    }
+
+    private record Entry<T>(T task, long deadline) {
+    }
+
+    private static final class Bucket<T> implements Delayed {
+
+        private final List<Entry<T>> entries = new ArrayList<>();
+        private volatile long expiration = -1;
+
+        private List<Entry<T>> flush() {
+            List<Entry<T>> flushed = new ArrayList<>(entries);
+            entries.clear();
+            expiration = -1;
+            return flushed;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(expiration - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(expiration, ((Bucket<?>) other).expiration);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package it.polito.cloudresources.eventprocessor.util;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A JSON object serialized once and shared by several requests that differ only in one numeric field.
+ * The common part is encoded without the field; each request gets a copy with the field spliced in
+ * right after the opening brace, so no payload object, tree or String is rebuilt per request.
+ * The common part is a plain byte array rather than a pooled buffer or a streaming generator: each request
+ * costs exactly one allocation, of the final body size, which the HTTP client needs as an array anyway.
+ * Everything but the spliced field is shared, including values computed at serialization time such as
+ * timestamps.
+ */
+public final class SplicedJsonPayload {
+
+    private final byte[] prefix;
+    private final byte[] common;
+
+    private SplicedJsonPayload(byte[] prefix, byte[] common) {
+        this.prefix = prefix;
+        this.common = common;
+    }
+
+    /**
+     * Serialize the common part of a payload.
+     *
+     * @param objectMapper The mapper to serialize with
+     * @param payload The payload, with the spliced field left null (and omitted through NON_NULL inclusion)
+     * @param fieldName Name of the field spliced in by {@link #withField(long)}
+     * @return The shared payload
+     * @throws JsonProcessingException if the payload cannot be serialized
+     */
+    public static SplicedJsonPayload of(ObjectMapper objectMapper, Object payload, String fieldName) throws JsonProcessingException {
+        byte[] common = objectMapper.writeValueAsBytes(payload);
+        if (common.length < 2 || common[0] != '{') {
+            throw new IllegalArgumentException("Payload of type " + payload.getClass().getSimpleName() + " is not serialized as a JSON object");
+        }
+        byte[] prefix = ("{\"" + fieldName + "\":").getBytes(StandardCharsets.UTF_8);
+        return new SplicedJsonPayload(prefix, common);
+    }
+
+    /**
+     * The request body with the field set to the given value.
+     */
+    public byte[] withField(long value) {
+        byte[] digits = Long.toString(value).getBytes(StandardCharsets.US_ASCII);
+        // "{}" has no other fields, so no separating comma is needed
+        boolean empty = common.length == 2;
+        byte[] body = new byte[prefix.length + digits.length + (empty ? 0 : 1) + common.length - 1];
+
+        int position = 0;
+        System.arraycopy(prefix, 0, body, position, prefix.length);
+        position += prefix.length;
+        System.arraycopy(digits, 0, body, position, digits.length);
+        position += digits.length;
+        if (!empty) {
+            body[position++] = ',';
+        }
+        System.arraycopy(common, 1, body, position, common.length - 1);
+        return body;
+    }
+}
@@ -0,0 +1,65 @@
+-- Tables and columns owned by the event processor. The events, resources and webhook_configs tables belong to reservation-be.
+-- Every statement tolerates existing objects, so databases created by Hibernate's ddl-auto are baselined as they are.
+
+DECLARE
+    column_exists EXCEPTION;
+    PRAGMA EXCEPTION_INIT(column_exists, -1430);
+BEGIN
+    EXECUTE IMMEDIATE 'ALTER TABLE events ADD (start_notified_at TIMESTAMP(6) WITH TIME ZONE)';
+EXCEPTION
+    WHEN column_exists THEN NULL;
+END;
+/
+
+DECLARE
+    column_exists EXCEPTION;
+    PRAGMA EXCEPTION_INIT(column_exists, -1430);
+BEGIN
+    EXECUTE IMMEDIATE 'ALTER TABLE events ADD (end_notified_at TIMESTAMP(6) WITH TIME ZONE)';
+EXCEPTION
+    WHEN column_exists THEN NULL;
+END;
+/
+
+DECLARE
+    table_exists EXCEPTION;
+    PRAGMA EXCEPTION_INIT(table_exists, -955);
+BEGIN
+    EXECUTE IMMEDIATE '
+        CREATE TABLE webhook_deliveries (
+            id               NUMBER(19) GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+            webhook_id       NUMBER(19)                  NOT NULL,
+            event_id         NUMBER(19)                  NOT NULL,
+            batch_event_ids  VARCHAR2(4000 CHAR),
+            user_id          VARCHAR2(255 CHAR),
+            event_type       VARCHAR2(50 CHAR)           NOT NULL,
+            status           VARCHAR2(20 CHAR)           NOT NULL,
+            attempts         NUMBER(10)                  NOT NULL,
+            next_attempt_at  TIMESTAMP(6) WITH TIME ZONE NOT NULL,
+            lease_expires_at TIMESTAMP(6) WITH TIME ZONE,
+            last_status_code NUMBER(10),
+            last_error       VARCHAR2(1000 CHAR),
+            created_at       TIMESTAMP(6) WITH TIME ZONE NOT NULL,
+            delivered_at     TIMESTAMP(6) WITH TIME ZONE
+        )
+    ';
+EXCEPTION
+    WHEN table_exists THEN NULL;
+END;
+/
+
+DECLARE
+    table_exists EXCEPTION;
+    PRAGMA EXCEPTION_INIT(table_exists, -955);
+BEGIN
+    EXECUTE IMMEDIATE '
+        CREATE TABLE processor_nodes (
+            node_id        VARCHAR2(255 CHAR) PRIMARY KEY,
+            started_at     TIMESTAMP(6) WITH TIME ZONE NOT NULL,
+            last_heartbeat TIMESTAMP(6) WITH TIME ZONE NOT NULL
+        )
+    ';
+EXCEPTION
+    WHEN table_exists THEN NULL;
+END;
+/
@@ -0,0 +1,13 @@
+-- Indexes for the due-event scans.
+-- Oracle has no partial indexes, but a composite B-tree index stores rows whose leading column is NULL as long
+-- as another column is not: leading with the notified-at column turns "IS NULL AND time <= :end" into a range
+-- scan over the unnotified events only.
+-- Catch-up (EventRepository.findUnprocessedEventsStartingBetween / findUnprocessedEventsEndingBetween): the range
+-- is read in its (time, id) keyset order, with resource_id covering the partition filter.
+-- Window scan (EventRepository.findUnprocessedEventsInWindow): each branch of the OR is a range scan of one index
+-- over the window, then the rows are fetched and sorted by id, its keyset; the window is short, so few rows are sorted.
+-- ONLINE so reservation-be can keep writing events while the index is built.
+
+CREATE INDEX idx_events_due_start ON events (start_notified_at, start_time, id, resource_id) ONLINE;
+
+CREATE INDEX idx_events_due_end ON events (end_notified_at, end_time, id, resource_id) ONLINE;
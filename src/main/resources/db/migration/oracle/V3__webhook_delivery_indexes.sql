@@ -0,0 +1,8 @@
+-- Indexes for claiming due outbox rows (WebhookDeliveryRepository.findDueDeliveries):
+-- pending rows by next attempt, and in-flight rows by lease expiry, both led by the status.
+
+CREATE INDEX idx_webhook_deliveries_due ON webhook_deliveries (status, next_attempt_at, id);
+
+CREATE INDEX idx_webhook_deliveries_lease ON webhook_deliveries (status, lease_expires_at);
+
+CREATE INDEX idx_processor_nodes_heartbeat ON processor_nodes (last_heartbeat);
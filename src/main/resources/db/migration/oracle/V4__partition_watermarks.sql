@@ -0,0 +1,18 @@
+-- High-water marks of the catch-up (CatchUpService), one row per resource partition.
+
+DECLARE
+    table_exists EXCEPTION;
+    PRAGMA EXCEPTION_INIT(table_exists, -955);
+BEGIN
+    EXECUTE IMMEDIATE '
+        CREATE TABLE partition_watermarks (
+            partition_id  NUMBER(19) PRIMARY KEY,
+            scanned_until TIMESTAMP(6) WITH TIME ZONE NOT NULL,
+            node_id       VARCHAR2(255 CHAR),
+            updated_at    TIMESTAMP(6) WITH TIME ZONE NOT NULL
+        )
+    ';
+EXCEPTION
+    WHEN table_exists THEN NULL;
+END;
+/
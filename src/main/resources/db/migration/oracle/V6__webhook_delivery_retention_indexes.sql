@@ -0,0 +1,7 @@
+-- Indexes for the outbox purge (WebhookOutboxService.purge): delivered rows by delivery time, and dead rows by
+-- creation time, both led by the status, which also serves the depth counts.
+-- ONLINE so the dispatcher can keep writing deliveries while the index is built.
+
+CREATE INDEX idx_webhook_deliveries_delivered ON webhook_deliveries (status, delivered_at) ONLINE;
+
+CREATE INDEX idx_webhook_deliveries_dead ON webhook_deliveries (status, created_at) ONLINE;
@@ -0,0 +1,13 @@
+-- Throttled (429/503) deferrals of a delivery. They don't count as attempts up to webhook.delivery.max-deferrals,
+-- so an endpoint that always throttles still ends up dead-lettered (WebhookOutboxService.recordThrottled).
+-- A NOT NULL column with a default is a metadata-only change, the existing rows are not updated.
+
+DECLARE
+    column_exists EXCEPTION;
+    PRAGMA EXCEPTION_INIT(column_exists, -1430);
+BEGIN
+    EXECUTE IMMEDIATE 'ALTER TABLE webhook_deliveries ADD (deferrals NUMBER(10) DEFAULT 0 NOT NULL)';
+EXCEPTION
+    WHEN column_exists THEN NULL;
+END;
+/
@@ -0,0 +1,28 @@
+-- Tables and columns owned by the event processor. The events, resources and webhook_configs tables belong to reservation-be.
+-- IF NOT EXISTS everywhere, so databases created by Hibernate's ddl-auto are baselined as they are.
+
+ALTER TABLE events ADD COLUMN IF NOT EXISTS start_notified_at TIMESTAMP(6) WITH TIME ZONE;
+ALTER TABLE events ADD COLUMN IF NOT EXISTS end_notified_at TIMESTAMP(6) WITH TIME ZONE;
+
+CREATE TABLE IF NOT EXISTS webhook_deliveries (
+    id               BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    webhook_id       BIGINT                      NOT NULL,
+    event_id         BIGINT                      NOT NULL,
+    batch_event_ids  VARCHAR(4000),
+    user_id          VARCHAR(255),
+    event_type       VARCHAR(50)                 NOT NULL,
+    status           VARCHAR(20)                 NOT NULL,
+    attempts         INTEGER                     NOT NULL,
+    next_attempt_at  TIMESTAMP(6) WITH TIME ZONE NOT NULL,
+    lease_expires_at TIMESTAMP(6) WITH TIME ZONE,
+    last_status_code INTEGER,
+    last_error       VARCHAR(1000),
+    created_at       TIMESTAMP(6) WITH TIME ZONE NOT NULL,
+    delivered_at     TIMESTAMP(6) WITH TIME ZONE
+);
+
+CREATE TABLE IF NOT EXISTS processor_nodes (
+    node_id        VARCHAR(255) PRIMARY KEY,
+    started_at     TIMESTAMP(6) WITH TIME ZONE NOT NULL,
+    last_heartbeat TIMESTAMP(6) WITH TIME ZONE NOT NULL
+);
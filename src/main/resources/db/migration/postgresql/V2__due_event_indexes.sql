@@ -0,0 +1,15 @@
+-- Partial indexes for the due-event scans. Only events still awaiting their notification are indexed, so the
+-- indexes stay small as the history grows.
+-- Catch-up (EventRepository.findUnprocessedEventsStartingBetween / findUnprocessedEventsEndingBetween): the key
+-- matches its (time, id) keyset order and resource_id covers the partition filter, allowing index-only scans.
+-- Window scan (EventRepository.findUnprocessedEventsInWindow): both indexes are read for the time range of the
+-- window (BitmapOr), then the rows are fetched and sorted by id, its keyset; the window is short, so few rows are sorted.
+-- Built CONCURRENTLY so reservation-be can keep writing events; Flyway runs this migration outside a transaction.
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_events_due_start
+    ON events (start_time, id) INCLUDE (resource_id)
+    WHERE start_notified_at IS NULL;
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_events_due_end
+    ON events (end_time, id) INCLUDE (resource_id)
+    WHERE end_notified_at IS NULL;
@@ -0,0 +1,13 @@
+-- Indexes for claiming due outbox rows (WebhookDeliveryRepository.findDueDeliveries):
+-- pending rows by next attempt, and in-flight rows by lease expiry. Delivered and dead rows are not indexed.
+
+CREATE INDEX IF NOT EXISTS idx_webhook_deliveries_pending
+    ON webhook_deliveries (next_attempt_at, id)
+    WHERE status = 'PENDING';
+
+CREATE INDEX IF NOT EXISTS idx_webhook_deliveries_in_flight
+    ON webhook_deliveries (lease_expires_at)
+    WHERE status = 'IN_FLIGHT';
+
+CREATE INDEX IF NOT EXISTS idx_processor_nodes_heartbeat
+    ON processor_nodes (last_heartbeat);
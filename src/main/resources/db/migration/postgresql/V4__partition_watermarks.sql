@@ -0,0 +1,8 @@
+-- High-water marks of the catch-up (CatchUpService), one row per resource partition.
+
+CREATE TABLE IF NOT EXISTS partition_watermarks (
+    partition_id  BIGINT PRIMARY KEY,
+    scanned_until TIMESTAMP(6) WITH TIME ZONE NOT NULL,
+    node_id       VARCHAR(255),
+    updated_at    TIMESTAMP(6) WITH TIME ZONE NOT NULL
+);
@@ -0,0 +1,29 @@
+-- Change feed triggers for the PostgreSQL LISTEN/NOTIFY listener (PostgresChangeFeedListener).
+-- Notifications are delivered when the writing transaction commits, so the listener always reads the committed row.
+-- Without a listener (change feed disabled) notifications are discarded, so the triggers cost next to nothing.
+
+-- Created events and events whose time or resource changed; the notified-at stamps written by the processor don't fire it
+CREATE OR REPLACE FUNCTION notify_event_change() RETURNS trigger AS $$
+BEGIN
+    PERFORM pg_notify('event_changes', NEW.id::text);
+    RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS events_change_feed ON events;
+CREATE TRIGGER events_change_feed
+    AFTER INSERT OR UPDATE OF start_time, end_time, resource_id ON events
+    FOR EACH ROW EXECUTE FUNCTION notify_event_change();
+
+-- Any change to the webhook configurations reloads the routing index
+CREATE OR REPLACE FUNCTION notify_webhook_config_change() RETURNS trigger AS $$
+BEGIN
+    PERFORM pg_notify('webhook_config_changes', '');
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS webhook_configs_change_feed ON webhook_configs;
+CREATE TRIGGER webhook_configs_change_feed
+    AFTER INSERT OR UPDATE OR DELETE ON webhook_configs
+    FOR EACH STATEMENT EXECUTE FUNCTION notify_webhook_config_change();
@@ -0,0 +1,11 @@
+-- Indexes for the outbox purge (WebhookOutboxService.purge): delivered rows by delivery time, and dead rows by
+-- creation time. Partial, so each only holds the rows of its state; the dead one also serves the DEAD depth count.
+-- Built CONCURRENTLY so the dispatcher can keep writing deliveries; Flyway runs this migration outside a transaction.
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_webhook_deliveries_delivered
+    ON webhook_deliveries (delivered_at)
+    WHERE status = 'DELIVERED';
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_webhook_deliveries_dead
+    ON webhook_deliveries (created_at)
+    WHERE status = 'DEAD';
@@ -0,0 +1,5 @@
+-- Throttled (429/503) deferrals of a delivery. They don't count as attempts up to webhook.delivery.max-deferrals,
+-- so an endpoint that always throttles still ends up dead-lettered (WebhookOutboxService.recordThrottled).
+-- A constant default is stored in the catalog, so adding the column does not rewrite the table.
+
+ALTER TABLE webhook_deliveries ADD COLUMN IF NOT EXISTS deferrals INTEGER NOT NULL DEFAULT 0;
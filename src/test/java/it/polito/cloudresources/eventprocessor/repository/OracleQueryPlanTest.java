@@ -0,0 +1,50 @@
+package it.polito.cloudresources.eventprocessor.repository;
+
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.OracleContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.List;
+
+@Testcontainers(disabledWithoutDocker = true)
+@ActiveProfiles("oracle")
+class OracleQueryPlanTest extends QueryPlanTestBase {
+
+    @Container
+    static final OracleContainer oracle = new OracleContainer("gvenzl/oracle-xe:21-slim-faststart");
+
+    @DynamicPropertySource
+    static void datasource(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", oracle::getJdbcUrl);
+        registry.add("spring.datasource.username", oracle::getUsername);
+        registry.add("spring.datasource.password", oracle::getPassword);
+    }
+
+    // EXPLAIN PLAN leaves the :pn bind variables unpeeked, as for a cached cursor
+    @Override
+    protected String explain(String sql) {
+        jdbcTemplate.execute("EXPLAIN PLAN FOR " + numberParameters(sql, ":p"));
+        // Collapse the column padding of the plan table, e.g. "|   2 |   INDEX RANGE SCAN   | IDX_EVENTS_DUE_START |"
+        return lines("SELECT plan_table_output FROM TABLE(DBMS_XPLAN.DISPLAY())")
+                .replaceAll(" *\\| *", " | ")
+                .replaceAll(" {2,}", " ");
+    }
+
+    @Override
+    protected String fullScan(String table) {
+        return "TABLE ACCESS FULL | " + table.toUpperCase();
+    }
+
+    @Override
+    protected String index(String name) {
+        return name.toUpperCase();
+    }
+
+    @Override
+    protected List<String> outboxIndexes() {
+        return List.of("idx_webhook_deliveries_due", "idx_webhook_deliveries_lease");
+    }
+}
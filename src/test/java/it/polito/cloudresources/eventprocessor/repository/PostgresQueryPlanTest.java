@@ -0,0 +1,46 @@
+package it.polito.cloudresources.eventprocessor.repository;
+
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.List;
+
+@Testcontainers(disabledWithoutDocker = true)
+class PostgresQueryPlanTest extends QueryPlanTestBase {
+
+    @Container
+    static final PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    @DynamicPropertySource
+    static void datasource(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+        // The simple query protocol sends the $n placeholders of EXPLAIN (GENERIC_PLAN) as they are, without binding them
+        registry.add("spring.datasource.hikari.data-source-properties.preferQueryMode", () -> "simple");
+    }
+
+    // GENERIC_PLAN (PostgreSQL 16) plans the statement with $n placeholders, as for a cached prepared statement
+    @Override
+    protected String explain(String sql) {
+        return lines("EXPLAIN (GENERIC_PLAN) " + numberParameters(sql, "$"));
+    }
+
+    @Override
+    protected String fullScan(String table) {
+        return "Seq Scan on " + table;
+    }
+
+    @Override
+    protected String index(String name) {
+        return name;
+    }
+
+    @Override
+    protected List<String> outboxIndexes() {
+        return List.of("idx_webhook_deliveries_pending", "idx_webhook_deliveries_in_flight");
+    }
+}
@@ -0,0 +1,161 @@
+package it.polito.cloudresources.eventprocessor.repository;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks that the due-event scans and the outbox claim and purge are planned on the indexes of the migrations.
+ * The SQL is the one Hibernate generates for the repository methods, explained as a generic plan (bind values
+ * unknown, as for a cached prepared statement) against a database migrated with db/migration and filled by
+ * db/query-plans with representative data. Planner settings are the defaults.
+ */
+@DataJpaTest(properties = {
+        "spring.jpa.hibernate.ddl-auto=none",
+        "spring.jpa.properties.hibernate.session_factory.statement_inspector=it.polito.cloudresources.eventprocessor.repository.QueryPlanTestBase$SqlCapture",
+        "spring.flyway.locations=classpath:db/reservation-be/{vendor},classpath:db/migration/{vendor},classpath:db/query-plans/{vendor}"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+abstract class QueryPlanTestBase {
+
+    private static final int PARTITION_COUNT = 64;
+    private static final int CHUNK_SIZE = 500;
+
+    @Autowired
+    private EventRepository eventRepository;
+
+    @Autowired
+    private WebhookDeliveryRepository webhookDeliveryRepository;
+
+    @Autowired
+    protected JdbcTemplate jdbcTemplate;
+
+    /**
+     * Explain a statement with positional (?) parameters
+     *
+     * @return The plan, as text
+     */
+    protected abstract String explain(String sql);
+
+    /**
+     * Plan fragment of a full scan of the given table
+     */
+    protected abstract String fullScan(String table);
+
+    /**
+     * Name of an index as it appears in a plan
+     */
+    protected abstract String index(String name);
+
+    /**
+     * Indexes of the outbox scan, one for pending and one for in-flight deliveries
+     */
+    protected abstract List<String> outboxIndexes();
+
+    @BeforeEach
+    void clearCapturedStatements() {
+        SqlCapture.statements.clear();
+    }
+
+    @Test
+    void dueEventScanUsesBothDueIndexes() {
+        ZonedDateTime now = ZonedDateTime.now();
+        String plan = explain(sqlOf(() -> eventRepository.findUnprocessedEventsInWindow(now.minusMinutes(1), now.plusMinutes(5),
+                -1L, PARTITION_COUNT, allPartitions(), PageRequest.of(0, CHUNK_SIZE))));
+
+        assertThat(plan).contains(index("idx_events_due_start"), index("idx_events_due_end")).doesNotContain(fullScan("events"));
+    }
+
+    @Test
+    void catchUpStartScanUsesDueStartIndex() {
+        ZonedDateTime now = ZonedDateTime.now();
+        String plan = explain(sqlOf(() -> eventRepository.findUnprocessedEventsStartingBetween(now.minusDays(1), -1L, now.plusMinutes(5),
+                PARTITION_COUNT, allPartitions(), PageRequest.of(0, CHUNK_SIZE))));
+
+        assertThat(plan).contains(index("idx_events_due_start")).doesNotContain(fullScan("events"));
+    }
+
+    @Test
+    void catchUpEndScanUsesDueEndIndex() {
+        ZonedDateTime now = ZonedDateTime.now();
+        String plan = explain(sqlOf(() -> eventRepository.findUnprocessedEventsEndingBetween(now.minusDays(1), -1L, now.plusMinutes(5),
+                PARTITION_COUNT, allPartitions(), PageRequest.of(0, CHUNK_SIZE))));
+
+        assertThat(plan).contains(index("idx_events_due_end")).doesNotContain(fullScan("events"));
+    }
+
+    @Test
+    void outboxScanUsesDeliveryIndexes() {
+        String plan = explain(sqlOf(() -> webhookDeliveryRepository.findDueDeliveries(ZonedDateTime.now(), List.of(3L),
+                PageRequest.of(0, CHUNK_SIZE))));
+
+        assertThat(plan).contains(outboxIndexes().stream().map(this::index).toList()).doesNotContain(fullScan("webhook_deliveries"));
+    }
+
+    @Test
+    void purgeScansUseRetentionIndexes() {
+        ZonedDateTime now = ZonedDateTime.now();
+        String delivered = explain(sqlOf(() -> webhookDeliveryRepository.findDeliveredBefore(now.minusHours(24), PageRequest.of(0, CHUNK_SIZE))));
+        SqlCapture.statements.clear();
+        String dead = explain(sqlOf(() -> webhookDeliveryRepository.findDeadBefore(now.minusDays(30), PageRequest.of(0, CHUNK_SIZE))));
+
+        assertThat(delivered).contains(index("idx_webhook_deliveries_delivered")).doesNotContain(fullScan("webhook_deliveries"));
+        assertThat(dead).contains(index("idx_webhook_deliveries_dead")).doesNotContain(fullScan("webhook_deliveries"));
+    }
+
+    // Run a query and return the SQL Hibernate generated for it
+    private String sqlOf(Runnable query) {
+        query.run();
+        assertThat(SqlCapture.statements).hasSize(1);
+        return SqlCapture.statements.get(0);
+    }
+
+    private static List<Long> allPartitions() {
+        return LongStream.range(0, PARTITION_COUNT).boxed().toList();
+    }
+
+    // Collects the plan lines of a query returning one row per line
+    protected String lines(String sql) {
+        return String.join("\n", jdbcTemplate.queryForList(sql, String.class));
+    }
+
+    // Replace the positional parameters with numbered placeholders: prefix + 1, prefix + 2, ...
+    protected static String numberParameters(String sql, String prefix) {
+        StringBuilder numbered = new StringBuilder(sql.length() + 32);
+        int parameter = 0;
+        for (char c : sql.toCharArray()) {
+            if (c == '?') {
+                numbered.append(prefix).append(++parameter);
+            } else {
+                numbered.append(c);
+            }
+        }
+        return numbered.toString();
+    }
+
+    /**
+     * Hibernate statement inspector that records the SQL of the queries run by a test
+     */
+    public static class SqlCapture implements StatementInspector {
+
+        static final List<String> statements = new CopyOnWriteArrayList<>();
+
+        @Override
+        public String inspect(String sql) {
+            statements.add(sql);
+            return sql;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package it.polito.cloudresources.eventprocessor.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import it.polito.cloudresources.eventprocessor.model.PartitionWatermark;
+import it.polito.cloudresources.eventprocessor.model.WebhookEventType;
+import it.polito.cloudresources.eventprocessor.repository.EventRepository;
+import it.polito.cloudresources.eventprocessor.repository.PartitionWatermarkRepository;
+import it.polito.cloudresources.eventprocessor.util.DateTimeUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.sql.Timestamp;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Runs the catch-up against a migrated PostgreSQL database, outside of any test transaction like the scheduler does.
+ * Notification is mocked, so the events are never stamped and a rescan of an old range would notify them again.
+ */
+@DataJpaTest(properties = "spring.flyway.locations=classpath:db/reservation-be/{vendor},classpath:db/migration/{vendor}")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Testcontainers(disabledWithoutDocker = true)
+class CatchUpServiceTest {
+
+    private static final int PARTITION_COUNT = 4;
+    private static final Set<Long> PARTITIONS = Set.of(0L, 1L, 2L, 3L);
+
+    @Container
+    static final PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    @DynamicPropertySource
+    static void datasource(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+    }
+
+    @Autowired
+    private EventRepository eventRepository;
+
+    @Autowired
+    private PartitionWatermarkRepository partitionWatermarkRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final PartitionAssignmentService partitionAssignmentService = mock(PartitionAssignmentService.class);
+    private final EventProcessorService eventProcessorService = mock(EventProcessorService.class);
+    private final EventNotificationService eventNotificationService = mock(EventNotificationService.class);
+    private final DateTimeUtils dateTimeUtils = mock(DateTimeUtils.class);
+
+    private final ZonedDateTime now = ZonedDateTime.now(DateTimeUtils.DEFAULT_ZONE_ID).truncatedTo(ChronoUnit.SECONDS);
+    private CatchUpService catchUpService;
+    private long resourceId;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate.execute("TRUNCATE events, resources, resource_types, partition_watermarks RESTART IDENTITY CASCADE");
+        jdbcTemplate.update("INSERT INTO resource_types (name) VALUES ('GPU')");
+        jdbcTemplate.update("INSERT INTO resources (name, specs, location, type_id, site_id) VALUES ('gpu-1', '-', '-', 1, 'site')");
+        resourceId = 1;
+
+        when(partitionAssignmentService.ownedPartitions()).thenReturn(PARTITIONS);
+        when(partitionAssignmentService.partitionCount()).thenReturn(PARTITION_COUNT);
+        when(partitionAssignmentService.nodeId()).thenReturn("node-1");
+        when(eventNotificationService.notifyDueEvents(any(), anyCollection(), any()))
+                .thenAnswer(invocation -> invocation.getArgument(1, Collection.class).size());
+
+        catchUpService = new CatchUpService(eventRepository, partitionWatermarkRepository, partitionAssignmentService,
+                eventProcessorService, eventNotificationService, dateTimeUtils, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(catchUpService, "enabled", true);
+        ReflectionTestUtils.setField(catchUpService, "scanRateMillis", 60_000L);
+        ReflectionTestUtils.setField(catchUpService, "parallelism", 2);
+        ReflectionTestUtils.setField(catchUpService, "maxEventsPerSecond", 1000.0);
+        ReflectionTestUtils.setField(catchUpService, "maxLookbackHours", 168L);
+        ReflectionTestUtils.setField(catchUpService, "staleAfterMinutes", 60L);
+        ReflectionTestUtils.setField(catchUpService, "stalePolicy", CatchUpService.StalePolicy.NOTIFY);
+        ReflectionTestUtils.setField(catchUpService, "chunkSize", 500);
+        catchUpService.init();
+    }
+
+    @Test
+    void advancesTheMarksSoTheNextRunScansOnlyTheNewInterval() {
+        // Marks left by a node that stopped an hour ago
+        for (long partition : PARTITIONS) {
+            jdbcTemplate.update("INSERT INTO partition_watermarks (partition_id, scanned_until, node_id, updated_at) VALUES (?, ?, 'node-0', ?)",
+                    partition, timestamp(now.minusHours(1)), timestamp(now.minusHours(1)));
+        }
+        long missed = insertEvent(now.minusMinutes(30));
+
+        ZonedDateTime firstScannedFrom = now.minusMinutes(1);
+        run(now, firstScannedFrom);
+
+        verify(eventNotificationService).notifyDueEvents(WebhookEventType.EVENT_START, List.of(missed), firstScannedFrom);
+        assertMarks(firstScannedFrom);
+
+        // One scan interval later: only what became due since the new mark is caught up on
+        clearInvocations(eventNotificationService);
+        long recent = insertEvent(now.minusSeconds(30));
+        ZonedDateTime secondScannedFrom = now;
+        run(now.plusMinutes(1), secondScannedFrom);
+
+        verify(eventNotificationService).notifyDueEvents(WebhookEventType.EVENT_START, List.of(recent), secondScannedFrom);
+        verify(eventNotificationService, never()).notifyDueEvents(eq(WebhookEventType.EVENT_START),
+                argThat(ids -> ids.contains(missed)), any());
+        assertMarks(secondScannedFrom);
+    }
+
+    private void run(ZonedDateTime at, ZonedDateTime scannedFrom) {
+        when(dateTimeUtils.getCurrentDateTime()).thenReturn(at);
+        when(eventProcessorService.scannedFrom()).thenReturn(scannedFrom);
+        catchUpService.catchUp();
+    }
+
+    // An event starting at the given time, ending well after the catch-up ranges
+    private long insertEvent(ZonedDateTime start) {
+        return jdbcTemplate.queryForObject(
+                "INSERT INTO events (title, start_time, end_time, resource_id, keycloak_id) VALUES ('e', ?, ?, ?, 'user') RETURNING id",
+                Long.class, timestamp(start), timestamp(start.plusDays(1)), resourceId);
+    }
+
+    private void assertMarks(ZonedDateTime scannedUntil) {
+        List<PartitionWatermark> marks = partitionWatermarkRepository.findAllById(PARTITIONS);
+        assertThat(marks).hasSize(PARTITIONS.size())
+                .allSatisfy(mark -> assertThat(mark.getScannedUntil().toInstant()).isEqualTo(scannedUntil.toInstant()));
+    }
+
+    private static Timestamp timestamp(ZonedDateTime time) {
+        return Timestamp.from(time.toInstant());
+    }
+}
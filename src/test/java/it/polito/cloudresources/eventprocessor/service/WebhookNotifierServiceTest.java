@@ -0,0 +1,138 @@
+package it.polito.cloudresources.eventprocessor.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import it.polito.cloudresources.eventprocessor.model.Event;
+import it.polito.cloudresources.eventprocessor.model.Resource;
+import it.polito.cloudresources.eventprocessor.model.WebhookConfig;
+import it.polito.cloudresources.eventprocessor.model.WebhookDelivery;
+import it.polito.cloudresources.eventprocessor.model.WebhookEventType;
+import it.polito.cloudresources.eventprocessor.repository.EventRepository;
+import it.polito.cloudresources.eventprocessor.util.DateTimeUtils;
+import it.polito.cloudresources.eventprocessor.util.WebhookSigner;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class WebhookNotifierServiceTest {
+
+    private static final String USER_ID = "user-1";
+    private static final long WEBHOOK_ID = 7;
+
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+    private final WebhookRoutingIndex webhookRoutingIndex = mock(WebhookRoutingIndex.class);
+    private final EventRepository eventRepository = mock(EventRepository.class);
+    private final WebhookNotifierService notifier = new WebhookNotifierService(webhookRoutingIndex, eventRepository, null,
+            objectMapper, new DateTimeUtils(), mock(EnrichmentCacheService.class), null, new SimpleMeterRegistry(),
+            new WebhookSigner(), null);
+
+    // The notified transitions lie in the future, as starts fire start-lead-ms early
+    private final ZonedDateTime transition = ZonedDateTime.now(DateTimeUtils.DEFAULT_ZONE_ID).plusSeconds(5).truncatedTo(ChronoUnit.SECONDS);
+
+    @Test
+    void batchStartListsTheResourcesActiveAtTheStart() throws Exception {
+        Event starting = event(1, transition, transition.plusHours(2));
+        Event ongoing = event(2, transition.minusHours(1), transition.plusHours(1));
+        Event ended = event(3, transition.minusHours(2), transition.minusMinutes(1));
+        Event later = event(4, transition.plusMinutes(10), transition.plusHours(1));
+
+        JsonNode payload = prepareBatch(WebhookEventType.EVENT_START, List.of(starting), List.of(starting, ongoing, ended, later));
+
+        assertThat(eventIds(payload.get("events"))).containsExactly("1");
+        assertThat(eventIds(payload.get("activeResources"))).containsExactlyInAnyOrder("1", "2");
+    }
+
+    @Test
+    void batchEndListsTheResourcesStillActiveAfterTheEnd() throws Exception {
+        Event ending = event(1, transition.minusHours(2), transition);
+        Event ongoing = event(2, transition.minusHours(1), transition.plusHours(1));
+        Event starting = event(3, transition, transition.plusHours(1));
+
+        JsonNode payload = prepareBatch(WebhookEventType.EVENT_END, List.of(ending), List.of(ending, ongoing, starting));
+
+        assertThat(eventIds(payload.get("activeResources"))).containsExactlyInAnyOrder("2", "3");
+    }
+
+    @Test
+    void prefetchLooksUpTheEventsActiveAtTheNotifiedTransitions() {
+        Event first = event(1, transition, transition.plusHours(1));
+        Event second = event(2, transition.plusSeconds(30), transition.plusHours(1));
+        when(eventRepository.findAllWithResourceByIdIn(anyCollection())).thenReturn(List.of(first, second));
+
+        notifier.prefetch(List.of(batchDelivery(WebhookEventType.EVENT_START, List.of(first)),
+                batchDelivery(WebhookEventType.EVENT_START, List.of(second))));
+
+        verify(eventRepository).findActiveEventsForUsers(Set.of(USER_ID), transition, transition.plusSeconds(30));
+    }
+
+    @Test
+    void drainReadsTheRestOfTheBodyUpToTheLimit() throws Exception {
+        ByteArrayInputStream shortBody = new ByteArrayInputStream(new byte[20_000]);
+        ByteArrayInputStream longBody = new ByteArrayInputStream(new byte[100_000]);
+
+        WebhookNotifierService.drain(shortBody, 65_536);
+        WebhookNotifierService.drain(longBody, 65_536);
+
+        assertThat(shortBody.available()).isZero();
+        assertThat(longBody.available()).isEqualTo(100_000 - 65_536);
+    }
+
+    private JsonNode prepareBatch(WebhookEventType eventType, List<Event> notified, List<Event> candidates) throws Exception {
+        WebhookConfig webhook = new WebhookConfig();
+        webhook.setId(WEBHOOK_ID);
+        webhook.setName("webhook");
+        when(webhookRoutingIndex.findById(WEBHOOK_ID)).thenReturn(Optional.of(webhook));
+        EnrichmentSnapshot snapshot = new EnrichmentSnapshot(
+                notified.stream().collect(Collectors.toMap(Event::getId, event -> event)),
+                Map.of(USER_ID, candidates), Map.of(), Map.of(), Map.of());
+
+        WebhookNotifierService.PreparedCall call = notifier.prepare(batchDelivery(eventType, notified), snapshot);
+        return objectMapper.readTree(call.body());
+    }
+
+    private static WebhookDelivery batchDelivery(WebhookEventType eventType, List<Event> events) {
+        return WebhookDelivery.builder()
+                .webhookId(WEBHOOK_ID)
+                .eventId(events.get(0).getId())
+                .batchEventIds(events.stream().map(event -> String.valueOf(event.getId())).collect(Collectors.joining(",")))
+                .userId(USER_ID)
+                .eventType(eventType)
+                .build();
+    }
+
+    private static Event event(long id, ZonedDateTime start, ZonedDateTime end) {
+        Resource resource = new Resource();
+        resource.setId(100 + id);
+        resource.setName("gpu-" + id);
+        Event event = new Event();
+        event.setId(id);
+        event.setTitle("Event " + id);
+        event.setStart(start);
+        event.setEnd(end);
+        event.setResource(resource);
+        event.setKeycloakId(USER_ID);
+        return event;
+    }
+
+    private static List<String> eventIds(JsonNode events) {
+        List<String> ids = new ArrayList<>();
+        events.forEach(event -> ids.add(event.get("eventId").asText()));
+        return ids;
+    }
+}
@@ -0,0 +1,359 @@
+package it.polito.cloudresources.eventprocessor.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import it.polito.cloudresources.eventprocessor.model.Event;
+import it.polito.cloudresources.eventprocessor.model.WebhookConfig;
+import it.polito.cloudresources.eventprocessor.model.WebhookDelivery;
+import it.polito.cloudresources.eventprocessor.model.WebhookDeliveryStatus;
+import it.polito.cloudresources.eventprocessor.model.WebhookEventType;
+import it.polito.cloudresources.eventprocessor.model.dto.DueDelivery;
+import it.polito.cloudresources.eventprocessor.repository.WebhookDeliveryRepository;
+import it.polito.cloudresources.eventprocessor.util.DateTimeUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.Sort;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.util.AopTestUtils;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+
+/**
+ * Runs the outbox against a migrated PostgreSQL database, outside of any test transaction like the dispatcher does.
+ * Settings are those of application.yml: 8 attempts, 20 deferrals, backoff from 10 s doubling up to 3600 s, 120 s leases.
+ */
+@DataJpaTest(properties = {
+        "spring.flyway.locations=classpath:db/reservation-be/{vendor},classpath:db/migration/{vendor}",
+        "webhook.delivery.purge.batch-size=2",
+        "webhook.delivery.batch-webhook-ids=" + WebhookOutboxServiceTest.BATCH_WEBHOOK_ID
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Testcontainers(disabledWithoutDocker = true)
+@Import({WebhookOutboxService.class, WebhookOutboxServiceTest.Metrics.class})
+class WebhookOutboxServiceTest {
+
+    static final long BATCH_WEBHOOK_ID = 7;
+
+    private static final long INITIAL_BACKOFF_SECONDS = 10;
+    private static final long MAX_BACKOFF_SECONDS = 3600;
+    private static final int MAX_ATTEMPTS = 8;
+    private static final int MAX_DEFERRALS = 20;
+    private static final long LEASE_SECONDS = 120;
+
+    @Container
+    static final PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    @DynamicPropertySource
+    static void datasource(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+    }
+
+    @TestConfiguration
+    static class Metrics {
+
+        @Bean
+        MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+    }
+
+    @Autowired
+    private WebhookOutboxService outboxService;
+
+    @Autowired
+    private WebhookDeliveryRepository deliveryRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @MockBean
+    private WebhookRoutingIndex webhookRoutingIndex;
+
+    @MockBean
+    private DateTimeUtils dateTimeUtils;
+
+    private final ZonedDateTime now = ZonedDateTime.now(DateTimeUtils.DEFAULT_ZONE_ID).truncatedTo(ChronoUnit.SECONDS);
+
+    @BeforeEach
+    void setUp() {
+        deliveryRepository.deleteAllInBatch();
+        clockAt(now);
+        // Tests may override these on the shared service
+        setField("maxAttempts", MAX_ATTEMPTS);
+        setField("maxDeferrals", MAX_DEFERRALS);
+    }
+
+    @Test
+    void batchWhoseEventIdsOverflowTheColumnIsSplit() {
+        WebhookConfig webhook = new WebhookConfig();
+        webhook.setId(BATCH_WEBHOOK_ID);
+        when(webhookRoutingIndex.findRelevantWebhooks(any(), eq(WebhookEventType.EVENT_START))).thenReturn(List.of(webhook));
+        // 1000 IDs of 7 digits: 7999 characters with the commas, 500 IDs (3999 characters) fit in a delivery
+        List<Event> events = LongStream.range(1_000_000, 1_001_000).mapToObj(id -> {
+            Event event = new Event();
+            event.setId(id);
+            event.setKeycloakId("user");
+            return event;
+        }).toList();
+
+        int enqueued = new TransactionTemplate(transactionManager)
+                .execute(status -> outboxService.enqueue(WebhookEventType.EVENT_START, events));
+
+        List<WebhookDelivery> deliveries = deliveryRepository.findAll(Sort.by("id"));
+        assertThat(enqueued).isEqualTo(2);
+        assertThat(deliveries).hasSize(2).allSatisfy(delivery -> {
+            assertThat(delivery.getBatchEventIds()).hasSizeLessThanOrEqualTo(WebhookDelivery.BATCH_EVENT_IDS_LENGTH);
+            assertThat(delivery.getEventId()).isEqualTo(delivery.getEventIds().get(0));
+            assertThat(delivery.getUserId()).isEqualTo("user");
+        });
+        assertThat(deliveries.get(0).getEventIds()).hasSize(500);
+        assertThat(deliveries.stream().flatMap(delivery -> delivery.getEventIds().stream()).toList())
+                .isEqualTo(events.stream().map(Event::getId).toList());
+    }
+
+    @Test
+    void retryableFailureIsRescheduledAfterTheInitialBackoff() {
+        Long id = claimed(0);
+
+        outboxService.recordFailure(id, 500, "Receiver answered 500", true);
+
+        WebhookDelivery delivery = deliveryRepository.findById(id).orElseThrow();
+        assertThat(delivery.getStatus()).isEqualTo(WebhookDeliveryStatus.PENDING);
+        assertThat(delivery.getAttempts()).isEqualTo(1);
+        assertThat(delivery.getLastStatusCode()).isEqualTo(500);
+        assertThat(delivery.getLastError()).isEqualTo("Receiver answered 500");
+        assertThat(delivery.getLeaseExpiresAt()).isNull();
+        assertBackoff(delivery, INITIAL_BACKOFF_SECONDS);
+    }
+
+    @Test
+    void backoffDoublesUpToTheCapWithAtMostTenPercentJitter() {
+        // Attempt n waits 10 * 2^(n-1) s: 10, 20, ... 2560, then the 3600 s cap; the shift is bounded for huge counts
+        setField("maxAttempts", 100);
+        for (int attempts = 1; attempts <= 40; attempts++) {
+            Long id = claimed(attempts - 1);
+
+            outboxService.recordFailure(id, null, "Connection refused", true);
+
+            long expected = Math.min(INITIAL_BACKOFF_SECONDS << (attempts - 1), MAX_BACKOFF_SECONDS);
+            assertBackoff(deliveryRepository.findById(id).orElseThrow(), expected);
+        }
+    }
+
+    @Test
+    void nonRetryableFailureIsDeadRightAway() {
+        Long id = claimed(0);
+
+        outboxService.recordFailure(id, 410, "Receiver answered 410", false);
+
+        WebhookDelivery delivery = deliveryRepository.findById(id).orElseThrow();
+        assertThat(delivery.getStatus()).isEqualTo(WebhookDeliveryStatus.DEAD);
+        assertThat(delivery.getAttempts()).isEqualTo(1);
+        assertThat(delivery.getLeaseExpiresAt()).isNull();
+    }
+
+    @Test
+    void failureOfTheLastAttemptIsDead() {
+        Long beforeLast = claimed(MAX_ATTEMPTS - 2);
+        Long last = claimed(MAX_ATTEMPTS - 1);
+
+        outboxService.recordFailure(beforeLast, 503, "Receiver answered 503", true);
+        outboxService.recordFailure(last, 503, "Receiver answered 503", true);
+
+        assertThat(deliveryRepository.findById(beforeLast).orElseThrow().getStatus()).isEqualTo(WebhookDeliveryStatus.PENDING);
+        WebhookDelivery dead = deliveryRepository.findById(last).orElseThrow();
+        assertThat(dead.getStatus()).isEqualTo(WebhookDeliveryStatus.DEAD);
+        assertThat(dead.getAttempts()).isEqualTo(MAX_ATTEMPTS);
+    }
+
+    @Test
+    void successIsDelivered() {
+        Long id = claimed(2);
+
+        outboxService.recordSuccess(id, 204);
+
+        WebhookDelivery delivery = deliveryRepository.findById(id).orElseThrow();
+        assertThat(delivery.getStatus()).isEqualTo(WebhookDeliveryStatus.DELIVERED);
+        assertThat(delivery.getAttempts()).isEqualTo(3);
+        assertThat(delivery.getDeliveredAt().toInstant()).isEqualTo(now.toInstant());
+        assertThat(delivery.getLeaseExpiresAt()).isNull();
+    }
+
+    @Test
+    void deliveryIsDueOnlyOnceItsBackoffElapsed() {
+        Long id = claimed(0);
+        outboxService.recordFailure(id, 500, "Receiver answered 500", true);
+
+        assertThat(dueIds()).isEmpty();
+
+        clockAt(now.plusSeconds(INITIAL_BACKOFF_SECONDS * 11 / 10 + 1));
+        assertThat(dueIds()).containsExactly(id);
+    }
+
+    @Test
+    void throttleWithinTheAllowanceIsDeferredWithoutCountingAnAttempt() {
+        Long id = claimed(0);
+
+        outboxService.recordThrottled(id, 429, "Receiver answered 429", 30_000);
+
+        WebhookDelivery delivery = deliveryRepository.findById(id).orElseThrow();
+        assertThat(delivery.getStatus()).isEqualTo(WebhookDeliveryStatus.PENDING);
+        assertThat(delivery.getAttempts()).isZero();
+        assertThat(delivery.getDeferrals()).isEqualTo(1);
+        assertThat(delivery.getLastStatusCode()).isEqualTo(429);
+        assertThat(delivery.getLeaseExpiresAt()).isNull();
+        assertThat(delivery.getNextAttemptAt().toInstant()).isEqualTo(now.plusSeconds(30).toInstant());
+    }
+
+    @Test
+    void endpointThatAlwaysThrottlesIsDeadOnceTheDeferralsAreUsedUp() {
+        setField("maxDeferrals", 2);
+        Long id = claimed(0);
+
+        int throttles = 0;
+        ZonedDateTime clock = now;
+        WebhookDelivery delivery;
+        do {
+            outboxService.recordThrottled(id, 429, "Receiver answered 429", 60_000);
+            throttles++;
+            delivery = deliveryRepository.findById(id).orElseThrow();
+            if (throttles == 3) {
+                // The first throttle past the allowance is an attempt, retried after the longer of backoff and Retry-After
+                assertThat(delivery.getAttempts()).isEqualTo(1);
+                assertThat(delivery.getNextAttemptAt().toInstant()).isEqualTo(clock.plusSeconds(60).toInstant());
+            }
+            if (delivery.getStatus() == WebhookDeliveryStatus.PENDING) {
+                clock = delivery.getNextAttemptAt();
+                clockAt(clock);
+                assertThat(outboxService.claim(List.of(id))).hasSize(1);
+            }
+        } while (delivery.getStatus() == WebhookDeliveryStatus.PENDING && throttles < 100);
+
+        assertThat(delivery.getStatus()).isEqualTo(WebhookDeliveryStatus.DEAD);
+        assertThat(delivery.getAttempts()).isEqualTo(MAX_ATTEMPTS);
+        assertThat(throttles).isEqualTo(2 + MAX_ATTEMPTS);
+    }
+
+    @Test
+    void expiredLeaseIsReclaimed() {
+        Long id = claimed(0);
+        assertThat(deliveryRepository.findById(id).orElseThrow().getLeaseExpiresAt().toInstant())
+                .isEqualTo(now.plusSeconds(LEASE_SECONDS).toInstant());
+
+        // Still leased: neither found nor claimable
+        clockAt(now.plusSeconds(LEASE_SECONDS - 1));
+        assertThat(dueIds()).isEmpty();
+        assertThat(outboxService.claim(List.of(id))).isEmpty();
+
+        // The replica holding it died: claimed again under a new lease, without counting an attempt
+        ZonedDateTime expired = now.plusSeconds(LEASE_SECONDS + 1);
+        clockAt(expired);
+        assertThat(dueIds()).containsExactly(id);
+        List<WebhookDelivery> reclaimed = outboxService.claim(List.of(id));
+
+        assertThat(reclaimed).singleElement().satisfies(delivery -> {
+            assertThat(delivery.getStatus()).isEqualTo(WebhookDeliveryStatus.IN_FLIGHT);
+            assertThat(delivery.getAttempts()).isZero();
+        });
+        assertThat(deliveryRepository.findById(id).orElseThrow().getLeaseExpiresAt().toInstant())
+                .isEqualTo(expired.plusSeconds(LEASE_SECONDS).toInstant());
+    }
+
+    @Test
+    void purgeDeletesOnlyDeliveriesPastTheirRetention() {
+        for (int i = 0; i < 5; i++) {
+            save(WebhookDeliveryStatus.DELIVERED, 1, now.minusDays(3), now.minusDays(2));
+        }
+        Long recentlyDelivered = save(WebhookDeliveryStatus.DELIVERED, 1, now.minusDays(3), now.minusHours(1)).getId();
+        save(WebhookDeliveryStatus.DEAD, MAX_ATTEMPTS, now.minusDays(40), null);
+        Long recentlyDead = save(WebhookDeliveryStatus.DEAD, MAX_ATTEMPTS, now.minusDays(10), null).getId();
+        Long pending = save(WebhookDeliveryStatus.PENDING, 0, now.minusDays(40), null).getId();
+
+        outboxService.purge();
+
+        assertThat(deliveryRepository.findAll()).extracting(WebhookDelivery::getId)
+                .containsExactlyInAnyOrder(recentlyDelivered, recentlyDead, pending);
+    }
+
+    @Test
+    void purgeDeletesAtMostMaxBatchesPerRun() {
+        setField("purgeMaxBatches", 2);
+        for (int i = 0; i < 5; i++) {
+            save(WebhookDeliveryStatus.DELIVERED, 1, now.minusDays(3), now.minusDays(2));
+        }
+
+        outboxService.purge();
+        assertThat(deliveryRepository.count()).isEqualTo(1);
+
+        outboxService.purge();
+        assertThat(deliveryRepository.count()).isZero();
+    }
+
+    // A due delivery with the given attempts so far, claimed by this replica
+    private Long claimed(int attempts) {
+        Long id = save(WebhookDeliveryStatus.PENDING, attempts, now, null).getId();
+        assertThat(outboxService.claim(List.of(id))).hasSize(1);
+        return id;
+    }
+
+    private List<Long> dueIds() {
+        return outboxService.findDueDeliveries(100, List.of()).stream().map(DueDelivery::id).toList();
+    }
+
+    private void assertBackoff(WebhookDelivery delivery, long backoffSeconds) {
+        assertThat(delivery.getNextAttemptAt().toEpochSecond() - now.toEpochSecond())
+                .as("backoff after %d attempts", delivery.getAttempts())
+                .isBetween(backoffSeconds, backoffSeconds + backoffSeconds / 10);
+    }
+
+    // Override a setting on the service behind the transactional proxy
+    private void setField(String name, Object value) {
+        WebhookOutboxService target = AopTestUtils.getTargetObject(outboxService);
+        ReflectionTestUtils.setField(target, name, value);
+    }
+
+    private void clockAt(ZonedDateTime time) {
+        when(dateTimeUtils.getCurrentDateTime()).thenReturn(time);
+    }
+
+    private WebhookDelivery save(WebhookDeliveryStatus status, int attempts, ZonedDateTime createdAt, ZonedDateTime deliveredAt) {
+        return deliveryRepository.save(WebhookDelivery.builder()
+                .webhookId(1L)
+                .eventId(1L)
+                .userId("user")
+                .eventType(WebhookEventType.EVENT_START)
+                .status(status)
+                .attempts(attempts)
+                .nextAttemptAt(createdAt)
+                .createdAt(createdAt)
+                .deliveredAt(deliveredAt)
+                .build());
+    }
+}
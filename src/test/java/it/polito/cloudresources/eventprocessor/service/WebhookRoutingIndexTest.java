@@ -0,0 +1,120 @@
+package it.polito.cloudresources.eventprocessor.service;
+
+import it.polito.cloudresources.eventprocessor.model.Resource;
+import it.polito.cloudresources.eventprocessor.model.ResourceType;
+import it.polito.cloudresources.eventprocessor.model.WebhookConfig;
+import it.polito.cloudresources.eventprocessor.model.WebhookEventType;
+import it.polito.cloudresources.eventprocessor.repository.WebhookConfigRepository;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class WebhookRoutingIndexTest {
+
+    private static final long RESOURCE_1 = 1;
+    private static final long RESOURCE_2 = 2;
+    private static final long TYPE_1 = 10;
+    private static final long TYPE_2 = 20;
+
+    private final WebhookConfigRepository webhookConfigRepository = mock(WebhookConfigRepository.class);
+    private final WebhookRoutingIndex index = new WebhookRoutingIndex(webhookConfigRepository);
+
+    @Test
+    void matchesTheQueryItReplacedForEveryScopeAndEventType() {
+        // Every scope (resource, resource type, both, global) x subscribed type x enabled flag
+        List<WebhookConfig> webhooks = new ArrayList<>();
+        Long[][] scopes = {{RESOURCE_1, null}, {RESOURCE_2, null}, {null, TYPE_1}, {null, TYPE_2}, {RESOURCE_1, TYPE_2}, {null, null}};
+        for (Long[] scope : scopes) {
+            for (WebhookEventType subscribed : List.of(WebhookEventType.EVENT_START, WebhookEventType.EVENT_END, WebhookEventType.ALL)) {
+                for (boolean enabled : List.of(true, false)) {
+                    webhooks.add(webhook(webhooks.size() + 1, scope[0], scope[1], subscribed, enabled));
+                }
+            }
+        }
+        loadEnabled(webhooks);
+
+        for (Resource resource : List.of(resource(RESOURCE_1, TYPE_1), resource(RESOURCE_2, TYPE_1), resource(3, TYPE_2))) {
+            for (WebhookEventType eventType : WebhookEventType.values()) {
+                List<Long> expected = webhooks.stream()
+                        .filter(webhook -> matchesOldQuery(webhook, resource, eventType))
+                        .map(WebhookConfig::getId)
+                        .toList();
+
+                assertThat(index.findRelevantWebhooks(resource, eventType))
+                        .as("resource %d, %s", resource.getId(), eventType)
+                        .extracting(WebhookConfig::getId)
+                        .containsExactlyInAnyOrderElementsOf(expected);
+            }
+        }
+    }
+
+    @Test
+    void refreshSwapsTheSnapshot() {
+        WebhookConfig first = webhook(1, RESOURCE_1, null, WebhookEventType.EVENT_START, true);
+        loadEnabled(List.of(first));
+        Resource resource = resource(RESOURCE_1, TYPE_1);
+
+        assertThat(index.findRelevantWebhooks(resource, WebhookEventType.EVENT_START)).containsExactly(first);
+
+        // The first webhook is disabled and a global one is added
+        WebhookConfig second = webhook(2, null, null, WebhookEventType.ALL, true);
+        first.setEnabled(false);
+        loadEnabled(List.of(first, second));
+
+        assertThat(index.findRelevantWebhooks(resource, WebhookEventType.EVENT_START)).containsExactly(second);
+        assertThat(index.findById(1L)).isEmpty();
+        assertThat(index.findById(2L)).contains(second);
+    }
+
+    @Test
+    void failedRefreshKeepsThePreviousSnapshot() {
+        WebhookConfig webhook = webhook(1, null, TYPE_1, WebhookEventType.EVENT_END, true);
+        loadEnabled(List.of(webhook));
+
+        when(webhookConfigRepository.findByEnabledTrue()).thenThrow(new IllegalStateException("database down"));
+        index.refresh();
+
+        assertThat(index.findRelevantWebhooks(resource(RESOURCE_1, TYPE_1), WebhookEventType.EVENT_END)).containsExactly(webhook);
+    }
+
+    // Stands in for the derived query, then rebuilds the index
+    private void loadEnabled(List<WebhookConfig> webhooks) {
+        when(webhookConfigRepository.findByEnabledTrue()).thenReturn(webhooks.stream().filter(WebhookConfig::isEnabled).toList());
+        index.refresh();
+    }
+
+    // The WHERE clause of the removed findRelevantWebhooksForResourceEvent query
+    private static boolean matchesOldQuery(WebhookConfig webhook, Resource resource, WebhookEventType eventType) {
+        return webhook.isEnabled()
+                && (webhook.getEventType() == eventType || webhook.getEventType() == WebhookEventType.ALL)
+                && (Objects.equals(webhook.getResourceId(), resource.getId())
+                    || Objects.equals(webhook.getResourceTypeId(), resource.getType().getId())
+                    || (webhook.getResourceId() == null && webhook.getResourceTypeId() == null));
+    }
+
+    private static WebhookConfig webhook(long id, Long resourceId, Long resourceTypeId, WebhookEventType eventType, boolean enabled) {
+        WebhookConfig webhook = new WebhookConfig();
+        webhook.setId(id);
+        webhook.setName("webhook-" + id);
+        webhook.setResourceId(resourceId);
+        webhook.setResourceTypeId(resourceTypeId);
+        webhook.setEventType(eventType);
+        webhook.setEnabled(enabled);
+        return webhook;
+    }
+
+    private static Resource resource(long id, long typeId) {
+        ResourceType type = new ResourceType();
+        type.setId(typeId);
+        Resource resource = new Resource();
+        resource.setId(id);
+        resource.setType(type);
+        return resource;
+    }
+}
@@ -0,0 +1,142 @@
+package it.polito.cloudresources.eventprocessor.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class AdaptiveTokenBucketTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+    private static final long COOLDOWN = SECOND;
+
+    // 10 requests/s between 1 and 100, burst of 5, +1 request/s per second of calls, halved on throttling
+    private AdaptiveTokenBucket bucket(double initialRate) {
+        return new AdaptiveTokenBucket(initialRate, 1, 100, 5, 1, 0.5, COOLDOWN, 0);
+    }
+
+    @Test
+    void burstIsAvailableRightAway() {
+        AdaptiveTokenBucket bucket = bucket(10);
+
+        for (int i = 0; i < 5; i++) {
+            assertThat(bucket.reserve(0)).isZero();
+        }
+        assertThat(bucket.reserve(0)).isEqualTo(SECOND / 10);
+    }
+
+    @Test
+    void debtGrowsWithEveryReservation() {
+        AdaptiveTokenBucket bucket = bucket(10);
+        bucket.reserve(0, 5);
+
+        assertThat(bucket.reserve(0)).isEqualTo(SECOND / 10);
+        assertThat(bucket.reserve(0)).isEqualTo(2 * SECOND / 10);
+        assertThat(bucket.reserve(0, 3)).isEqualTo(5 * SECOND / 10);
+    }
+
+    @Test
+    void debtIsPaidOffByRefill() {
+        AdaptiveTokenBucket bucket = bucket(10);
+        bucket.reserve(0, 7);
+
+        // 2 tokens of debt are refilled after 200 ms, the next token after another 100 ms
+        assertThat(bucket.reserve(SECOND / 5)).isEqualTo(SECOND / 10);
+    }
+
+    @Test
+    void refillIsCappedAtBurst() {
+        AdaptiveTokenBucket bucket = bucket(10);
+
+        assertThat(bucket.reserve(60 * SECOND, 5)).isZero();
+        assertThat(bucket.reserve(60 * SECOND)).isEqualTo(SECOND / 10);
+    }
+
+    @Test
+    void cancelReturnsTheToken() {
+        AdaptiveTokenBucket bucket = bucket(10);
+        bucket.reserve(0, 5);
+
+        bucket.reserve(0);
+        bucket.cancel();
+
+        assertThat(bucket.reserve(0)).isEqualTo(SECOND / 10);
+    }
+
+    @Test
+    void rateGrowsByAdditiveIncreasePerSecondOfCalls() {
+        AdaptiveTokenBucket bucket = bucket(10);
+
+        // One second of calls at about 10 requests/s
+        for (int i = 0; i < 10; i++) {
+            bucket.onSuccess();
+        }
+
+        assertThat(bucket.getRate()).isCloseTo(11, within(0.05));
+    }
+
+    @Test
+    void rateIsCappedAtMaxRate() {
+        AdaptiveTokenBucket bucket = bucket(100);
+
+        bucket.onSuccess();
+
+        assertThat(bucket.getRate()).isEqualTo(100);
+    }
+
+    @Test
+    void throttlingHalvesTheRateOncePerCooldown() {
+        AdaptiveTokenBucket bucket = bucket(40);
+
+        bucket.onThrottled(0, 0);
+        assertThat(bucket.getRate()).isEqualTo(20);
+
+        // A burst of rejections within the cooldown counts once
+        bucket.onThrottled(0, COOLDOWN / 2);
+        bucket.onThrottled(0, COOLDOWN - 1);
+        assertThat(bucket.getRate()).isEqualTo(20);
+
+        bucket.onThrottled(0, COOLDOWN);
+        assertThat(bucket.getRate()).isEqualTo(10);
+    }
+
+    @Test
+    void rateIsFlooredAtMinRate() {
+        AdaptiveTokenBucket bucket = bucket(1.5);
+
+        bucket.onThrottled(0, 0);
+
+        assertThat(bucket.getRate()).isEqualTo(1);
+    }
+
+    @Test
+    void throttlingDropsTheSavedUpBurstButKeepsTheDebt() {
+        AdaptiveTokenBucket saved = bucket(10);
+        saved.onThrottled(0, 0);
+
+        // Rate halved to 5 requests/s, no burst left
+        assertThat(saved.reserve(0)).isEqualTo(SECOND / 5);
+
+        AdaptiveTokenBucket indebted = bucket(10);
+        indebted.reserve(0, 7);
+        indebted.onThrottled(0, 0);
+
+        // 2 tokens of debt at 5 requests/s, then the reserved token
+        assertThat(indebted.reserve(0)).isEqualTo(3 * SECOND / 5);
+    }
+
+    @Test
+    void pauseDelaysEveryReservation() {
+        AdaptiveTokenBucket bucket = bucket(10);
+
+        bucket.onThrottled(30 * SECOND, 0);
+
+        assertThat(bucket.reserve(SECOND)).isEqualTo(29 * SECOND);
+        // A shorter pause does not cut the longer one
+        bucket.onThrottled(SECOND, 2 * SECOND);
+        assertThat(bucket.reserve(2 * SECOND)).isEqualTo(28 * SECOND);
+        assertThat(bucket.reserve(30 * SECOND)).isZero();
+    }
+}
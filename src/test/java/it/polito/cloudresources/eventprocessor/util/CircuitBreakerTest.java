@@ -0,0 +1,141 @@
+package it.polito.cloudresources.eventprocessor.util;
+
+import it.polito.cloudresources.eventprocessor.util.CircuitBreaker.Outcome;
+import it.polito.cloudresources.eventprocessor.util.CircuitBreaker.State;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CircuitBreakerTest {
+
+    private static final long SLOW_MS = 1000;
+    private static final long OPEN_MS = 30_000;
+
+    // Window of 10 calls, opens from 5 recorded calls at 50% failed or 80% slow, 2 probes
+    private final CircuitBreaker breaker = new CircuitBreaker(10, 5, 50, SLOW_MS, 80, OPEN_MS, 2);
+
+    @Test
+    void staysClosedBelowMinimumCalls() {
+        for (int i = 0; i < 4; i++) {
+            call(Outcome.FAILURE, 0);
+        }
+
+        assertThat(breaker.getState()).isEqualTo(State.CLOSED);
+    }
+
+    @Test
+    void opensAtFailureRateThreshold() {
+        for (int i = 0; i < 3; i++) {
+            call(Outcome.SUCCESS, 0);
+        }
+        call(Outcome.FAILURE, 0);
+        call(Outcome.FAILURE, 0);
+        assertThat(breaker.getState()).isEqualTo(State.CLOSED);
+
+        call(Outcome.FAILURE, 0);
+
+        assertThat(breaker.getState()).isEqualTo(State.OPEN);
+        assertThat(breaker.isCallPermitted(OPEN_MS - 1)).isFalse();
+        assertThat(breaker.tryAcquire(OPEN_MS - 1)).isEqualTo(CircuitBreaker.REJECTED);
+        assertThat(breaker.isCallPermitted(OPEN_MS)).isTrue();
+    }
+
+    @Test
+    void opensAtSlowCallRateThreshold() {
+        call(Outcome.SUCCESS, 0);
+        for (int i = 0; i < 4; i++) {
+            call(Outcome.SUCCESS, SLOW_MS);
+        }
+
+        assertThat(breaker.getState()).isEqualTo(State.OPEN);
+    }
+
+    @Test
+    void ignoredOutcomesDoNotCount() {
+        for (int i = 0; i < 10; i++) {
+            call(Outcome.IGNORED, SLOW_MS);
+        }
+
+        assertThat(breaker.getState()).isEqualTo(State.CLOSED);
+    }
+
+    @Test
+    void closesAfterSuccessfulProbes() {
+        open();
+
+        long first = breaker.tryAcquire(OPEN_MS);
+        long second = breaker.tryAcquire(OPEN_MS);
+        assertThat(breaker.getState()).isEqualTo(State.HALF_OPEN);
+        assertThat(breaker.isCallPermitted(OPEN_MS)).isFalse();
+        assertThat(breaker.tryAcquire(OPEN_MS)).isEqualTo(CircuitBreaker.REJECTED);
+
+        breaker.record(first, Outcome.SUCCESS, 0, OPEN_MS);
+        assertThat(breaker.record(second, Outcome.SUCCESS, 0, OPEN_MS)).isEqualTo(State.CLOSED);
+    }
+
+    @Test
+    void reopensOnFailedProbe() {
+        open();
+
+        long probe = breaker.tryAcquire(OPEN_MS);
+
+        assertThat(breaker.record(probe, Outcome.FAILURE, 0, OPEN_MS)).isEqualTo(State.OPEN);
+        assertThat(breaker.isCallPermitted(2 * OPEN_MS - 1)).isFalse();
+        assertThat(breaker.isCallPermitted(2 * OPEN_MS)).isTrue();
+    }
+
+    @Test
+    void ignoredProbeFreesItsSlot() {
+        open();
+
+        long probe = breaker.tryAcquire(OPEN_MS);
+        breaker.tryAcquire(OPEN_MS);
+        breaker.record(probe, Outcome.IGNORED, 0, OPEN_MS);
+
+        assertThat(breaker.tryAcquire(OPEN_MS)).isNotEqualTo(CircuitBreaker.REJECTED);
+        assertThat(breaker.tryAcquire(OPEN_MS)).isEqualTo(CircuitBreaker.REJECTED);
+    }
+
+    @Test
+    void lateResultsDoNotAffectProbes() {
+        long late = breaker.tryAcquire(0);
+        open();
+
+        long probe = breaker.tryAcquire(OPEN_MS);
+        breaker.tryAcquire(OPEN_MS);
+        // A call permitted while closed completes during the probes: neither a probe result nor a free slot
+        assertThat(breaker.record(late, Outcome.FAILURE, 0, OPEN_MS)).isEqualTo(State.HALF_OPEN);
+        assertThat(breaker.record(late, Outcome.SUCCESS, 0, OPEN_MS)).isEqualTo(State.HALF_OPEN);
+        assertThat(breaker.tryAcquire(OPEN_MS)).isEqualTo(CircuitBreaker.REJECTED);
+
+        breaker.record(probe, Outcome.SUCCESS, 0, OPEN_MS);
+        assertThat(breaker.getState()).isEqualTo(State.HALF_OPEN);
+    }
+
+    @Test
+    void lateProbeResultsDoNotCountInTheNextRound() {
+        open();
+        long first = breaker.tryAcquire(OPEN_MS);
+        long second = breaker.tryAcquire(OPEN_MS);
+        breaker.record(first, Outcome.FAILURE, 0, OPEN_MS);
+        long third = breaker.tryAcquire(2 * OPEN_MS);
+        breaker.tryAcquire(2 * OPEN_MS);
+
+        // The second probe of the failed round must not count as a success of the new round
+        assertThat(breaker.record(second, Outcome.SUCCESS, 0, 2 * OPEN_MS)).isEqualTo(State.HALF_OPEN);
+        assertThat(breaker.record(third, Outcome.SUCCESS, 0, 2 * OPEN_MS)).isEqualTo(State.HALF_OPEN);
+    }
+
+    private void call(Outcome outcome, long durationMillis) {
+        long permit = breaker.tryAcquire(0);
+        assertThat(permit).isNotEqualTo(CircuitBreaker.REJECTED);
+        breaker.record(permit, outcome, durationMillis, 0);
+    }
+
+    private void open() {
+        for (int i = 0; i < 5; i++) {
+            call(Outcome.FAILURE, 0);
+        }
+        assertThat(breaker.getState()).isEqualTo(State.OPEN);
+    }
+}
@@ -0,0 +1,82 @@
+package it.polito.cloudresources.eventprocessor.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ConsistentHashRingTest {
+
+    private static final int VIRTUAL_NODES = 100;
+    private static final int KEYS = 10_000;
+
+    @Test
+    void emptyRingOwnsNothing() {
+        assertThat(new ConsistentHashRing(List.of(), VIRTUAL_NODES).nodeFor("42")).isNull();
+    }
+
+    @Test
+    void singleNodeOwnsEveryKey() {
+        ConsistentHashRing ring = new ConsistentHashRing(List.of("a"), VIRTUAL_NODES);
+
+        assertThat(assign(ring).values()).containsOnly("a");
+    }
+
+    @Test
+    void assignmentDoesNotDependOnNodeOrder() {
+        Map<String, String> assignment = assign(new ConsistentHashRing(List.of("a", "b", "c"), VIRTUAL_NODES));
+
+        assertThat(assign(new ConsistentHashRing(List.of("c", "a", "b"), VIRTUAL_NODES))).isEqualTo(assignment);
+    }
+
+    @Test
+    void keysAreSpreadEvenlyOverNodes() {
+        Map<String, String> assignment = assign(new ConsistentHashRing(List.of("a", "b", "c"), VIRTUAL_NODES));
+
+        for (String node : List.of("a", "b", "c")) {
+            long owned = assignment.values().stream().filter(node::equals).count();
+            assertThat((double) owned / KEYS).as("share of %s", node).isBetween(0.25, 0.42);
+        }
+    }
+
+    @Test
+    void joiningNodeOnlyTakesKeysOverItself() {
+        Map<String, String> before = assign(new ConsistentHashRing(List.of("a", "b"), VIRTUAL_NODES));
+        Map<String, String> after = assign(new ConsistentHashRing(List.of("a", "b", "c"), VIRTUAL_NODES));
+
+        int moved = 0;
+        for (Map.Entry<String, String> entry : after.entrySet()) {
+            if (!entry.getValue().equals(before.get(entry.getKey()))) {
+                // Keys never move between the nodes that were already there
+                assertThat(entry.getValue()).isEqualTo("c");
+                moved++;
+            }
+        }
+        assertThat((double) moved / KEYS).isBetween(0.25, 0.42);
+    }
+
+    @Test
+    void leavingNodeOnlyReleasesItsOwnKeys() {
+        Map<String, String> before = assign(new ConsistentHashRing(List.of("a", "b", "c"), VIRTUAL_NODES));
+        Map<String, String> after = assign(new ConsistentHashRing(List.of("a", "c"), VIRTUAL_NODES));
+
+        before.forEach((key, owner) -> {
+            if (owner.equals("b")) {
+                assertThat(after.get(key)).isIn("a", "c");
+            } else {
+                assertThat(after.get(key)).as("owner of %s", key).isEqualTo(owner);
+            }
+        });
+    }
+
+    private static Map<String, String> assign(ConsistentHashRing ring) {
+        Map<String, String> assignment = new HashMap<>();
+        for (int key = 0; key < KEYS; key++) {
+            assignment.put(String.valueOf(key), ring.nodeFor(String.valueOf(key)));
+        }
+        return assignment;
+    }
+}
@@ -0,0 +1,122 @@
+package it.polito.cloudresources.eventprocessor.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HierarchicalTimingWheelTest {
+
+    private static final long TICK = 10;
+    private static final int WHEEL_SIZE = 8; // 80 ms on the finest level, 640 ms on the first overflow level
+
+    @Test
+    void deadlineWithinCurrentTickIsNotScheduled() {
+        long now = System.currentTimeMillis();
+        HierarchicalTimingWheel<String> wheel = new HierarchicalTimingWheel<>(TICK, WHEEL_SIZE, now);
+
+        assertThat(wheel.schedule("past", now - 1000)).isFalse();
+        assertThat(wheel.schedule("now", now - (now % TICK))).isFalse();
+        assertThat(wheel.size()).isZero();
+    }
+
+    @Test
+    void pollTimesOutWhenNothingIsDue() throws InterruptedException {
+        long now = System.currentTimeMillis();
+        HierarchicalTimingWheel<String> wheel = new HierarchicalTimingWheel<>(TICK, WHEEL_SIZE, now);
+        wheel.schedule("later", now + 5000);
+
+        assertThat(wheel.poll(20)).isEmpty();
+        assertThat(wheel.size()).isEqualTo(1);
+    }
+
+    @Test
+    void tasksFireInDeadlineOrderAndNotBeforeTheirTick() throws InterruptedException {
+        long now = System.currentTimeMillis();
+        HierarchicalTimingWheel<String> wheel = new HierarchicalTimingWheel<>(TICK, WHEEL_SIZE, now);
+        Map<String, Long> deadlines = new LinkedHashMap<>();
+        deadlines.put("first", now + 30);
+        deadlines.put("second", now + 55);
+        deadlines.put("third", now + 70);
+        deadlines.forEach((task, deadline) -> assertThat(wheel.schedule(task, deadline)).isTrue());
+
+        Map<String, Long> fired = drain(wheel, deadlines.size());
+
+        assertThat(fired.keySet()).containsExactly("first", "second", "third");
+        assertFiredOnTime(deadlines, fired);
+        assertThat(wheel.size()).isZero();
+    }
+
+    @Test
+    void overflowDeadlinesCascadeDownToTheFinestLevel() throws InterruptedException {
+        long now = System.currentTimeMillis();
+        HierarchicalTimingWheel<String> wheel = new HierarchicalTimingWheel<>(TICK, WHEEL_SIZE, now);
+        Map<String, Long> deadlines = new LinkedHashMap<>();
+        deadlines.put("finest", now + 40);
+        deadlines.put("first-overflow", now + 250);
+        deadlines.put("second-overflow", now + 900);
+        deadlines.forEach((task, deadline) -> assertThat(wheel.schedule(task, deadline)).isTrue());
+        assertThat(wheel.size()).isEqualTo(3);
+
+        Map<String, Long> fired = drain(wheel, deadlines.size());
+
+        assertThat(fired.keySet()).containsExactly("finest", "first-overflow", "second-overflow");
+        assertFiredOnTime(deadlines, fired);
+        assertThat(wheel.size()).isZero();
+    }
+
+    @Test
+    void bucketIsReusedInTheNextRound() throws InterruptedException {
+        long now = System.currentTimeMillis();
+        HierarchicalTimingWheel<String> wheel = new HierarchicalTimingWheel<>(TICK, WHEEL_SIZE, now);
+        wheel.schedule("first-round", now + 20);
+        assertThat(drain(wheel, 1)).containsOnlyKeys("first-round");
+
+        // Same slot of the finest level, one full rotation later
+        long nextRound = now + 20 + TICK * WHEEL_SIZE;
+        assertThat(wheel.schedule("next-round", nextRound)).isTrue();
+        Map<String, Long> fired = drain(wheel, 1);
+
+        assertThat(fired).containsOnlyKeys("next-round");
+        assertThat(fired.get("next-round")).isGreaterThanOrEqualTo(nextRound - TICK);
+    }
+
+    @Test
+    void tasksSharingATickFireTogether() throws InterruptedException {
+        long now = System.currentTimeMillis();
+        HierarchicalTimingWheel<String> wheel = new HierarchicalTimingWheel<>(TICK, WHEEL_SIZE, now);
+        long tick = now - (now % TICK) + 5 * TICK;
+        wheel.schedule("a", tick);
+        wheel.schedule("b", tick + TICK - 1);
+
+        List<String> due = List.of();
+        while (due.isEmpty()) {
+            due = wheel.poll(1000);
+        }
+
+        assertThat(due).containsExactlyInAnyOrder("a", "b");
+    }
+
+    // Polls until count tasks fired, recording when each one did
+    private static Map<String, Long> drain(HierarchicalTimingWheel<String> wheel, int count) throws InterruptedException {
+        Map<String, Long> fired = new LinkedHashMap<>();
+        long giveUpAt = System.currentTimeMillis() + 5000;
+        while (fired.size() < count && System.currentTimeMillis() < giveUpAt) {
+            for (String task : wheel.poll(100)) {
+                fired.put(task, System.currentTimeMillis());
+            }
+        }
+        assertThat(fired).hasSize(count);
+        return fired;
+    }
+
+    // A task fires with the tick its deadline falls in, so at most one tick early
+    private static void assertFiredOnTime(Map<String, Long> deadlines, Map<String, Long> fired) {
+        deadlines.forEach((task, deadline) -> assertThat(fired.get(task))
+                .as("firing time of %s", task)
+                .isGreaterThanOrEqualTo(deadline - TICK));
+    }
+}
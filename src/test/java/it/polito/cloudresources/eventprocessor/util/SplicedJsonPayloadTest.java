@@ -0,0 +1,80 @@
+package it.polito.cloudresources.eventprocessor.util;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SplicedJsonPayloadTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper().setSerializationInclusion(JsonInclude.Include.NON_NULL);
+
+    @Test
+    void fieldIsSplicedInFrontOfTheCommonFields() throws Exception {
+        Map<String, Object> payload = new LinkedHashMap<>();
+        payload.put("eventId", "42");
+        payload.put("resource", Map.of("name", "gpu-01"));
+        SplicedJsonPayload shared = SplicedJsonPayload.of(objectMapper, payload, "webhookId");
+
+        byte[] body = shared.withField(7);
+
+        assertThat(new String(body, StandardCharsets.UTF_8))
+                .isEqualTo("{\"webhookId\":7,\"eventId\":\"42\",\"resource\":{\"name\":\"gpu-01\"}}");
+        JsonNode parsed = objectMapper.readTree(body);
+        assertThat(parsed.get("webhookId").asLong()).isEqualTo(7);
+        assertThat(parsed.get("eventId").asText()).isEqualTo("42");
+    }
+
+    @Test
+    void emptyObjectGetsNoSeparatingComma() throws Exception {
+        SplicedJsonPayload shared = SplicedJsonPayload.of(objectMapper, Map.of(), "webhookId");
+
+        assertThat(new String(shared.withField(7), StandardCharsets.UTF_8)).isEqualTo("{\"webhookId\":7}");
+    }
+
+    @Test
+    void objectWithOnlyNullFieldsIsEmpty() throws Exception {
+        SplicedJsonPayload shared = SplicedJsonPayload.of(objectMapper, new NullFields(), "webhookId");
+
+        assertThat(new String(shared.withField(3), StandardCharsets.UTF_8)).isEqualTo("{\"webhookId\":3}");
+    }
+
+    @Test
+    void negativeAndLargeValuesAreWrittenAsDigits() throws Exception {
+        SplicedJsonPayload shared = SplicedJsonPayload.of(objectMapper, Map.of("a", 1), "webhookId");
+
+        assertThat(objectMapper.readTree(shared.withField(-5)).get("webhookId").asLong()).isEqualTo(-5);
+        assertThat(objectMapper.readTree(shared.withField(Long.MAX_VALUE)).get("webhookId").asLong()).isEqualTo(Long.MAX_VALUE);
+    }
+
+    @Test
+    void everyRequestGetsItsOwnCopy() throws Exception {
+        SplicedJsonPayload shared = SplicedJsonPayload.of(objectMapper, Map.of("a", 1), "webhookId");
+
+        byte[] first = shared.withField(1);
+        first[first.length - 2] = '9';
+
+        assertThat(new String(shared.withField(1), StandardCharsets.UTF_8)).isEqualTo("{\"webhookId\":1,\"a\":1}");
+    }
+
+    @Test
+    void nonObjectPayloadIsRejected() {
+        assertThatThrownBy(() -> SplicedJsonPayload.of(objectMapper, List.of(1, 2), "webhookId"))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> SplicedJsonPayload.of(objectMapper, "text", "webhookId"))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static class NullFields {
+        public Long webhookId;
+        public String eventId;
+    }
+}
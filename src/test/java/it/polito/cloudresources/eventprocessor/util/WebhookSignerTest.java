@@ -0,0 +1,108 @@
+package it.polito.cloudresources.eventprocessor.util;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class WebhookSignerTest {
+
+    private static final byte[] BODY = "{\"eventId\":\"42\",\"eventType\":\"EVENT_START\"}".getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    void nothingIsSignedWithoutSecret() {
+        WebhookSigner signer = signer(true);
+
+        HttpHeaders nullSecret = new HttpHeaders();
+        signer.sign(null, BODY, nullSecret);
+        HttpHeaders emptySecret = new HttpHeaders();
+        signer.sign("", BODY, emptySecret);
+
+        assertThat(nullSecret).isEmpty();
+        assertThat(emptySecret).isEmpty();
+    }
+
+    @Test
+    void bodyIsSignedWithHmacSha256() throws Exception {
+        HttpHeaders headers = new HttpHeaders();
+        signer(false).sign("secret", BODY, headers);
+
+        assertThat(headers.getFirst(WebhookSigner.SIGNATURE_HEADER)).isEqualTo(hmac("secret", BODY));
+        assertThat(headers.containsKey(WebhookSigner.TIMESTAMP_HEADER)).isFalse();
+        assertThat(headers.containsKey(WebhookSigner.TIMESTAMPED_SIGNATURE_HEADER)).isFalse();
+    }
+
+    @Test
+    void cachedKeysAreNotMixedUpBetweenSecrets() throws Exception {
+        WebhookSigner signer = signer(false);
+
+        for (int i = 0; i < 3; i++) {
+            for (String secret : List.of("first", "second")) {
+                HttpHeaders headers = new HttpHeaders();
+                signer.sign(secret, BODY, headers);
+                assertThat(headers.getFirst(WebhookSigner.SIGNATURE_HEADER)).isEqualTo(hmac(secret, BODY));
+            }
+        }
+    }
+
+    @Test
+    void timestampedSignatureCoversTimestampAndBody() throws Exception {
+        long before = Instant.now().getEpochSecond();
+        HttpHeaders headers = new HttpHeaders();
+        signer(true).sign("secret", BODY, headers);
+
+        String timestamp = headers.getFirst(WebhookSigner.TIMESTAMP_HEADER);
+        assertThat(Long.parseLong(timestamp)).isBetween(before, Instant.now().getEpochSecond());
+        byte[] signed = (timestamp + ".").getBytes(StandardCharsets.US_ASCII);
+        byte[] timestampedBody = new byte[signed.length + BODY.length];
+        System.arraycopy(signed, 0, timestampedBody, 0, signed.length);
+        System.arraycopy(BODY, 0, timestampedBody, signed.length, BODY.length);
+        assertThat(headers.getFirst(WebhookSigner.TIMESTAMPED_SIGNATURE_HEADER)).isEqualTo(hmac("secret", timestampedBody));
+        // The plain signature is still sent, and isn't affected by the timestamped one
+        assertThat(headers.getFirst(WebhookSigner.SIGNATURE_HEADER)).isEqualTo(hmac("secret", BODY));
+    }
+
+    @Test
+    void concurrentSignaturesWithTheSameSecretAreIndependent() throws Exception {
+        WebhookSigner signer = signer(false);
+        String expected = hmac("secret", BODY);
+
+        List<Future<String>> signatures = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(8)) {
+            for (int i = 0; i < 2000; i++) {
+                signatures.add(executor.submit(() -> {
+                    HttpHeaders headers = new HttpHeaders();
+                    signer.sign("secret", BODY, headers);
+                    return headers.getFirst(WebhookSigner.SIGNATURE_HEADER);
+                }));
+            }
+        }
+        for (Future<String> signature : signatures) {
+            assertThat(signature.get()).isEqualTo(expected);
+        }
+    }
+
+    private static WebhookSigner signer(boolean timestamped) {
+        WebhookSigner signer = new WebhookSigner();
+        ReflectionTestUtils.setField(signer, "timestamped", timestamped);
+        return signer;
+    }
+
+    private static String hmac(String secret, byte[] data) throws Exception {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+        return Base64.getEncoder().encodeToString(mac.doFinal(data));
+    }
+}
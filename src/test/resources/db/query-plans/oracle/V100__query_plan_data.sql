@@ -0,0 +1,53 @@
+-- Data of the query plan tests, shaped like a database that has been running for a while: a long history of
+-- notified events and delivered webhooks, and a small share still due. Statistics are gathered at the end, so the
+-- optimizer works from the same kind of figures as in production.
+
+INSERT INTO resource_types (name, site_id) VALUES ('Server', 'site');
+
+INSERT INTO resources (name, specs, location, status, type_id, site_id)
+SELECT 'Resource ' || LEVEL, 'specs', 'Rack ' || MOD(LEVEL, 10), 'ACTIVE', 1, 'site'
+FROM dual CONNECT BY LEVEL <= 200;
+
+-- Two years of past events, every start and end notified
+INSERT INTO events (title, start_time, end_time, resource_id, keycloak_id, start_notified_at, end_notified_at)
+SELECT 'Past ' || LEVEL,
+       SYSTIMESTAMP - NUMTODSINTERVAL(LEVEL * 5 + 60, 'MINUTE'), SYSTIMESTAMP - NUMTODSINTERVAL(LEVEL * 5, 'MINUTE'),
+       1 + MOD(LEVEL, 200), 'user-' || MOD(LEVEL, 500),
+       SYSTIMESTAMP - NUMTODSINTERVAL(LEVEL * 5 + 60, 'MINUTE'), SYSTIMESTAMP - NUMTODSINTERVAL(LEVEL * 5, 'MINUTE')
+FROM dual CONNECT BY LEVEL <= 200000;
+
+-- Upcoming events, awaiting both notifications
+INSERT INTO events (title, start_time, end_time, resource_id, keycloak_id)
+SELECT 'Upcoming ' || LEVEL,
+       SYSTIMESTAMP + NUMTODSINTERVAL(LEVEL, 'MINUTE'), SYSTIMESTAMP + NUMTODSINTERVAL(LEVEL + 60, 'MINUTE'),
+       1 + MOD(LEVEL, 200), 'user-' || MOD(LEVEL, 500)
+FROM dual CONNECT BY LEVEL <= 2000;
+
+INSERT INTO webhook_deliveries (webhook_id, event_id, user_id, event_type, status, attempts, next_attempt_at, created_at, delivered_at)
+SELECT 1 + MOD(LEVEL, 10), LEVEL, 'user-' || MOD(LEVEL, 500), 'EVENT_START', 'DELIVERED', 1,
+       SYSTIMESTAMP - NUMTODSINTERVAL(LEVEL, 'MINUTE'), SYSTIMESTAMP - NUMTODSINTERVAL(LEVEL, 'MINUTE'),
+       SYSTIMESTAMP - NUMTODSINTERVAL(LEVEL, 'MINUTE')
+FROM dual CONNECT BY LEVEL <= 200000;
+
+INSERT INTO webhook_deliveries (webhook_id, event_id, user_id, event_type, status, attempts, next_attempt_at, created_at, last_error)
+SELECT 1 + MOD(LEVEL, 10), LEVEL, 'user-' || MOD(LEVEL, 500), 'EVENT_END', 'DEAD', 8,
+       SYSTIMESTAMP - NUMTODSINTERVAL(LEVEL, 'HOUR'), SYSTIMESTAMP - NUMTODSINTERVAL(LEVEL, 'HOUR'), 'Receiver answered 500'
+FROM dual CONNECT BY LEVEL <= 1000;
+
+-- Pending deliveries, half of them due, and deliveries in flight
+INSERT INTO webhook_deliveries (webhook_id, event_id, user_id, event_type, status, attempts, next_attempt_at, created_at)
+SELECT 1 + MOD(LEVEL, 10), 200000 + LEVEL, 'user-' || MOD(LEVEL, 500), 'EVENT_START', 'PENDING', MOD(LEVEL, 3),
+       SYSTIMESTAMP + NUMTODSINTERVAL(LEVEL - 500, 'SECOND'), SYSTIMESTAMP
+FROM dual CONNECT BY LEVEL <= 1000;
+
+INSERT INTO webhook_deliveries (webhook_id, event_id, user_id, event_type, status, attempts, next_attempt_at, lease_expires_at, created_at)
+SELECT 1 + MOD(LEVEL, 10), 201000 + LEVEL, 'user-' || MOD(LEVEL, 500), 'EVENT_START', 'IN_FLIGHT', 0,
+       SYSTIMESTAMP, SYSTIMESTAMP + NUMTODSINTERVAL(2, 'MINUTE'), SYSTIMESTAMP
+FROM dual CONNECT BY LEVEL <= 200;
+
+BEGIN
+    DBMS_STATS.GATHER_TABLE_STATS(USER, 'RESOURCES');
+    DBMS_STATS.GATHER_TABLE_STATS(USER, 'EVENTS');
+    DBMS_STATS.GATHER_TABLE_STATS(USER, 'WEBHOOK_DELIVERIES');
+END;
+/
@@ -0,0 +1,45 @@
+-- Data of the query plan tests, shaped like a database that has been running for a while: a long history of
+-- notified events and delivered webhooks, and a small share still due. Statistics are gathered at the end, so the
+-- planner works from the same kind of figures as in production.
+
+INSERT INTO resource_types (name, site_id) VALUES ('Server', 'site');
+
+INSERT INTO resources (name, specs, location, status, type_id, site_id)
+SELECT 'Resource ' || i, 'specs', 'Rack ' || i % 10, 'ACTIVE', 1, 'site'
+FROM generate_series(1, 200) i;
+
+-- Two years of past events, every start and end notified
+INSERT INTO events (title, start_time, end_time, resource_id, keycloak_id, start_notified_at, end_notified_at)
+SELECT 'Past ' || i, now() - i * interval '5 minutes' - interval '1 hour', now() - i * interval '5 minutes',
+       1 + i % 200, 'user-' || i % 500,
+       now() - i * interval '5 minutes' - interval '1 hour', now() - i * interval '5 minutes'
+FROM generate_series(1, 200000) i;
+
+-- Upcoming events, awaiting both notifications
+INSERT INTO events (title, start_time, end_time, resource_id, keycloak_id)
+SELECT 'Upcoming ' || i, now() + i * interval '1 minute', now() + i * interval '1 minute' + interval '1 hour',
+       1 + i % 200, 'user-' || i % 500
+FROM generate_series(1, 2000) i;
+
+INSERT INTO webhook_deliveries (webhook_id, event_id, user_id, event_type, status, attempts, next_attempt_at, created_at, delivered_at)
+SELECT 1 + i % 10, i, 'user-' || i % 500, 'EVENT_START', 'DELIVERED', 1,
+       now() - i * interval '1 minute', now() - i * interval '1 minute', now() - i * interval '1 minute'
+FROM generate_series(1, 200000) i;
+
+INSERT INTO webhook_deliveries (webhook_id, event_id, user_id, event_type, status, attempts, next_attempt_at, created_at, last_error)
+SELECT 1 + i % 10, i, 'user-' || i % 500, 'EVENT_END', 'DEAD', 8, now() - i * interval '1 hour', now() - i * interval '1 hour', 'Receiver answered 500'
+FROM generate_series(1, 1000) i;
+
+-- Pending deliveries, half of them due, and deliveries in flight
+INSERT INTO webhook_deliveries (webhook_id, event_id, user_id, event_type, status, attempts, next_attempt_at, created_at)
+SELECT 1 + i % 10, 200000 + i, 'user-' || i % 500, 'EVENT_START', 'PENDING', i % 3,
+       now() + (i - 500) * interval '1 second', now()
+FROM generate_series(1, 1000) i;
+
+INSERT INTO webhook_deliveries (webhook_id, event_id, user_id, event_type, status, attempts, next_attempt_at, lease_expires_at, created_at)
+SELECT 1 + i % 10, 201000 + i, 'user-' || i % 500, 'EVENT_START', 'IN_FLIGHT', 0, now(), now() + interval '2 minutes', now()
+FROM generate_series(1, 200) i;
+
+ANALYZE resources;
+ANALYZE events;
+ANALYZE webhook_deliveries;
@@ -0,0 +1,61 @@
+-- Tables owned by reservation-be, as far as the processor maps them, for the databases of the query plan tests.
+-- Runs before the processor's own migrations (V1 adds the notified-at columns to events).
+
+CREATE TABLE resource_types (
+    id                NUMBER(19) GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    name              VARCHAR2(50 CHAR)           NOT NULL,
+    color             VARCHAR2(7 CHAR),
+    site_id           VARCHAR2(255 CHAR),
+    custom_parameters CLOB,
+    created_at        TIMESTAMP(6) WITH TIME ZONE,
+    updated_at        TIMESTAMP(6) WITH TIME ZONE
+);
+
+CREATE TABLE resources (
+    id         NUMBER(19) GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    parent_id  NUMBER(19) REFERENCES resources (id),
+    name       VARCHAR2(100 CHAR)          NOT NULL,
+    specs      VARCHAR2(255 CHAR)          NOT NULL,
+    location   VARCHAR2(100 CHAR)          NOT NULL,
+    status     VARCHAR2(255 CHAR),
+    type_id    NUMBER(19)                  NOT NULL REFERENCES resource_types (id),
+    site_id    VARCHAR2(255 CHAR)          NOT NULL,
+    created_at TIMESTAMP(6) WITH TIME ZONE,
+    updated_at TIMESTAMP(6) WITH TIME ZONE
+);
+
+CREATE TABLE events (
+    id                NUMBER(19) GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    title             VARCHAR2(100 CHAR)          NOT NULL,
+    description       VARCHAR2(500 CHAR),
+    start_time        TIMESTAMP(6) WITH TIME ZONE NOT NULL,
+    end_time          TIMESTAMP(6) WITH TIME ZONE NOT NULL,
+    resource_id       NUMBER(19)                  NOT NULL REFERENCES resources (id),
+    keycloak_id       VARCHAR2(255 CHAR)          NOT NULL,
+    custom_parameters CLOB,
+    created_at        TIMESTAMP(6) WITH TIME ZONE,
+    updated_at        TIMESTAMP(6) WITH TIME ZONE
+);
+
+CREATE TABLE webhook_configs (
+    id               NUMBER(19) GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    name             VARCHAR2(255 CHAR),
+    url              VARCHAR2(255 CHAR),
+    event_type       VARCHAR2(255 CHAR),
+    secret           VARCHAR2(255 CHAR),
+    enabled          NUMBER(1) NOT NULL,
+    resource_id      NUMBER(19),
+    resource_type_id NUMBER(19)
+);
+
+CREATE SEQUENCE ssh_keys_seq INCREMENT BY 50;
+
+CREATE TABLE ssh_keys (
+    id         NUMBER(19) PRIMARY KEY,
+    user_id    VARCHAR2(255 CHAR)  NOT NULL UNIQUE,
+    ssh_key    VARCHAR2(4000 CHAR) NOT NULL,
+    created_at TIMESTAMP(6)        NOT NULL,
+    updated_at TIMESTAMP(6)        NOT NULL,
+    created_by VARCHAR2(255 CHAR)  NOT NULL,
+    updated_by VARCHAR2(255 CHAR)  NOT NULL
+);
@@ -0,0 +1,61 @@
+-- Tables owned by reservation-be, as far as the processor maps them, for the databases of the query plan tests
+-- and of the load test. Runs before the processor's own migrations (V1 adds the notified-at columns to events).
+
+CREATE TABLE IF NOT EXISTS resource_types (
+    id                BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    name              VARCHAR(50)                 NOT NULL,
+    color             VARCHAR(7),
+    site_id           VARCHAR(255),
+    custom_parameters TEXT,
+    created_at        TIMESTAMP(6) WITH TIME ZONE,
+    updated_at        TIMESTAMP(6) WITH TIME ZONE
+);
+
+CREATE TABLE IF NOT EXISTS resources (
+    id         BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    parent_id  BIGINT REFERENCES resources (id),
+    name       VARCHAR(100)                NOT NULL,
+    specs      VARCHAR(255)                NOT NULL,
+    location   VARCHAR(100)                NOT NULL,
+    status     VARCHAR(255),
+    type_id    BIGINT                      NOT NULL REFERENCES resource_types (id),
+    site_id    VARCHAR(255)                NOT NULL,
+    created_at TIMESTAMP(6) WITH TIME ZONE,
+    updated_at TIMESTAMP(6) WITH TIME ZONE
+);
+
+CREATE TABLE IF NOT EXISTS events (
+    id                BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    title             VARCHAR(100)                NOT NULL,
+    description       VARCHAR(500),
+    start_time        TIMESTAMP(6) WITH TIME ZONE NOT NULL,
+    end_time          TIMESTAMP(6) WITH TIME ZONE NOT NULL,
+    resource_id       BIGINT                      NOT NULL REFERENCES resources (id),
+    keycloak_id       VARCHAR(255)                NOT NULL,
+    custom_parameters TEXT,
+    created_at        TIMESTAMP(6) WITH TIME ZONE,
+    updated_at        TIMESTAMP(6) WITH TIME ZONE
+);
+
+CREATE TABLE IF NOT EXISTS webhook_configs (
+    id               BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    name             VARCHAR(255),
+    url              VARCHAR(255),
+    event_type       VARCHAR(255),
+    secret           VARCHAR(255),
+    enabled          BOOLEAN NOT NULL,
+    resource_id      BIGINT,
+    resource_type_id BIGINT
+);
+
+CREATE SEQUENCE IF NOT EXISTS ssh_keys_seq INCREMENT BY 50;
+
+CREATE TABLE IF NOT EXISTS ssh_keys (
+    id         BIGINT PRIMARY KEY,
+    user_id    VARCHAR(255)  NOT NULL UNIQUE,
+    ssh_key    VARCHAR(4000) NOT NULL,
+    created_at TIMESTAMP(6)  NOT NULL,
+    updated_at TIMESTAMP(6)  NOT NULL,
+    created_by VARCHAR(255)  NOT NULL,
+    updated_by VARCHAR(255)  NOT NULL
+);